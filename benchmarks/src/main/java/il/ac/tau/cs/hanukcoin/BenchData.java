@@ -0,0 +1,68 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test data for the benchmarks.
+ * Mining a real chain of thousands of blocks takes too long, so synthetic chains are linked properly
+ * (serial, prevSig, signature field) but their signatures do not have the required zeros.
+ * Validation still hashes every block - the cost is the same as for a real chain.
+ */
+public class BenchData {
+    public static List<Block> syntheticChain(int size) {
+        List<Block> chain = new ArrayList<>(size);
+        Block prev = HanukCoinUtils.createBlock0forTestStage();
+        chain.add(prev);
+        for (int i = 1; i < size; i++) {
+            byte[] prevSig = new byte[8];
+            System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+            Block b = Block.createNoSig(i, HanukCoinUtils.walletCode("TEAM" + (i % 17)), prevSig);
+            b.setLongPuzzle(i * 0x9E3779B97F4A7C15L);
+            b.setSignaturePart(b.calcSignature());
+            chain.add(b);
+            prev = b;
+        }
+        return chain;
+    }
+
+    public static List<ShowChain3.NodeInfo> nodes(int count) {
+        List<ShowChain3.NodeInfo> nodes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ShowChain3.NodeInfo n = new ShowChain3.NodeInfo();
+            n.name = "TEAM" + i;
+            n.host = "10.0.0." + (i % 250);
+            n.port = 8080 + i;
+            n.lastSeenTS = 1700000000 + i;
+            nodes.add(n);
+        }
+        return nodes;
+    }
+
+    /**
+     * Encode a cmd=1/cmd=2 message
+     */
+    public static void writeMessage(DataOutputStream dos, int cmd, List<ShowChain3.NodeInfo> nodes, List<Block> blocks)
+            throws IOException {
+        dos.writeInt(cmd);
+        dos.writeInt(ShowChain3.BEEF_BEEF);
+        dos.writeInt(nodes.size());
+        for (ShowChain3.NodeInfo n : nodes) {
+            n.writeTo(dos);
+        }
+        dos.writeInt(ShowChain3.DEAD_DEAD);
+        dos.writeInt(blocks.size());
+        for (Block b : blocks) {
+            b.writeTo(dos);
+        }
+    }
+
+    public static byte[] encodeMessage(int cmd, List<ShowChain3.NodeInfo> nodes, List<Block> blocks) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeMessage(new DataOutputStream(bos), cmd, nodes, blocks);
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,49 @@
+package il.ac.tau.cs.hanukcoin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single block operations. Run with -t N to see how they scale with threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--enable-preview"})
+public class BlockBenchmark {
+    Block prev;
+    Block block;
+    Block other;
+
+    @Setup
+    public void setup() {
+        List<Block> chain = BenchData.syntheticChain(3);
+        prev = chain.get(1);
+        block = chain.get(2);
+        other = chain.get(0);
+    }
+
+    @Benchmark
+    public byte[] calcSignature() {
+        return block.calcSignature();
+    }
+
+    @Benchmark
+    public Block.BlockError checkSignature() {
+        return block.checkSignature();
+    }
+
+    @Benchmark
+    public Block.BlockError checkValidNext() {
+        return block.checkValidNext(prev);
+    }
+
+    @Benchmark
+    public int comparePuzzle() {
+        return block.comparePuzzle(other);
+    }
+}
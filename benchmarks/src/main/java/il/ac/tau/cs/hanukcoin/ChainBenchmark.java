@@ -0,0 +1,61 @@
+package il.ac.tau.cs.hanukcoin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole chain operations - validation from genesis and cmd=1/2 message encode/parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--enable-preview"})
+public class ChainBenchmark {
+    @Param({"100", "1000", "10000"})
+    int chainSize;
+
+    @Param({"20"})
+    int nodesCount;
+
+    List<Block> chain;
+    List<ShowChain3.NodeInfo> nodes;
+    byte[] message;
+    ShowChain3.ClientConnection connection;
+
+    @Setup
+    public void setup() throws IOException {
+        chain = BenchData.syntheticChain(chainSize);
+        nodes = BenchData.nodes(nodesCount);
+        message = BenchData.encodeMessage(2, nodes, chain);
+        connection = new ShowChain3().new ClientConnection(null, null);
+    }
+
+    @Benchmark
+    public int validateChain() {
+        int linked = 0;
+        for (int i = 1; i < chain.size(); i++) {
+            // synthetic blocks fail on SIG_NO_ZEROS - after the full hash, like a valid block would
+            if (chain.get(i).checkValidNext(chain.get(i - 1)) == Block.BlockError.SIG_NO_ZEROS) {
+                linked++;
+            }
+        }
+        return linked;
+    }
+
+    @Benchmark
+    public byte[] encodeMessage() throws IOException {
+        return BenchData.encodeMessage(2, nodes, chain);
+    }
+
+    @Benchmark
+    public Object parseMessage() throws IOException {
+        return connection.parseMessage(new DataInputStream(new ByteArrayInputStream(message)));
+    }
+}
@@ -0,0 +1,79 @@
+package il.ac.tau.cs.hanukcoin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mining hash-rate.
+ * The previous block has a huge serial number so the puzzle needs 51 zero bits - never solved in a benchmark,
+ * every call does the full number of attempts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--enable-preview"})
+public class MiningBenchmark {
+    static final int ATTEMPTS = 100000;
+
+    static Block hardPrevBlock() {
+        return Block.create(0x40000000, 1, new byte[8], new byte[8], new byte[12]);
+    }
+
+    /**
+     * ParallelMiner - ops/s * threads * ATTEMPTS is the hash-rate
+     */
+    @State(Scope.Benchmark)
+    public static class MinerState {
+        @Param({"1", "2", "4", "8"})
+        int threads;
+
+        ParallelMiner miner;
+        Block prev;
+
+        @Setup
+        public void setup() {
+            miner = new ParallelMiner(threads);
+            prev = hardPrevBlock();
+        }
+
+        @TearDown
+        public void tearDown() {
+            miner.shutdown();
+        }
+    }
+
+    /**
+     * One MiningBackend on one thread - ops/s * ATTEMPTS is the hash-rate
+     */
+    @State(Scope.Thread)
+    public static class BackendState {
+        @Param({"scalar", "vector", "native", "jca"})
+        String backendName;
+
+        MiningBackend backend;
+        int nZeros;
+
+        @Setup
+        public void setup() {
+            backend = MiningBackend.newBackend(backendName);
+            if (backend == null) {
+                throw new IllegalStateException("backend not available: " + backendName);
+            }
+            Block b = Block.createNoSig(0x40000001, 2, new byte[8]);
+            backend.reset(b.getBytes());
+            nZeros = HanukCoinUtils.numberOfZerosForPuzzle(b.getSerialNumber());
+        }
+    }
+
+    @Benchmark
+    public Block parallelMiner(MinerState s) throws InterruptedException {
+        return s.miner.mine(2, s.prev, ATTEMPTS);
+    }
+
+    @Benchmark
+    public int backendSearch(BackendState s) {
+        return s.backend.search(0, ATTEMPTS, s.nZeros);
+    }
+}
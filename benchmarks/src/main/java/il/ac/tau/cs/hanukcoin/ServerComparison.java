@@ -0,0 +1,144 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test of the servers - not JMH, a server benchmark needs many client connections at once.
+ * Each server runs in this JVM on a free port. CLIENTS client threads each send REQUESTS "GET /" requests,
+ * one connection per request like a browser with "Connection: Closed". Reports requests/sec and latency.
+ *   java -cp target/benchmarks.jar il.ac.tau.cs.hanukcoin.ServerComparison [CLIENTS [REQUESTS]]
+ */
+public class ServerComparison {
+    static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: bench\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+
+    interface Server {
+        void run() throws InterruptedException;
+        void stop();
+        int port();
+    }
+
+    static Server nio(int workers) {
+        ServerSimpleNonBlocking.accepPort = 0;
+        ServerSimpleNonBlocking s = new ServerSimpleNonBlocking(workers);
+        return new Server() {
+            @Override
+            public void run() throws InterruptedException {
+                s.runServer();
+            }
+
+            @Override
+            public void stop() {
+                s.stop();
+            }
+
+            @Override
+            public int port() {
+                return s.boundPort;
+            }
+        };
+    }
+
+    static Server threads(boolean virtual, int clients) {
+        ServerSimpleThreads.accepPort = 0;
+        ServerSimpleThreads s = virtual ? new ServerSimpleThreads(clients * 2, ServerSimpleThreads.DEFAULT_TIMEOUT_MILLI)
+                : new ServerSimpleThreads();
+        return new Server() {
+            @Override
+            public void run() throws InterruptedException {
+                s.runServer();
+            }
+
+            @Override
+            public void stop() {
+                s.stop();
+            }
+
+            @Override
+            public int port() {
+                return s.boundPort;
+            }
+        };
+    }
+
+    static long request(int port) throws Exception {
+        long t1 = System.nanoTime();
+        try (Socket soc = new Socket("127.0.0.1", port)) {
+            OutputStream out = soc.getOutputStream();
+            out.write(REQUEST);
+            out.flush();
+            InputStream in = soc.getInputStream();
+            in.transferTo(OutputStream.nullOutputStream());  // server closes after the response
+        }
+        return System.nanoTime() - t1;
+    }
+
+    static String measure(String name, Server server, int clients, int requests) throws Exception {
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (InterruptedException e) {
+                // stop
+            }
+        });
+        serverThread.start();
+        while (server.port() < 0) {
+            Thread.sleep(5);
+        }
+        int port = server.port();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long[] latencies = new long[clients * requests];
+        long t1 = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            final int base = c * requests;
+            futures.add(pool.submit(() -> {
+                for (int r = 0; r < requests; r++) {
+                    latencies[base + r] = request(port);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long elapsed = System.nanoTime() - t1;
+        pool.shutdown();
+        server.stop();
+        serverThread.join();
+        Arrays.sort(latencies);
+        return String.format("%-24s %10.0f req/s  p50 %8.3f ms  p99 %8.3f ms", name,
+                latencies.length * 1e9 / elapsed,
+                latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6);
+    }
+
+    public static void main(String[] argv) throws Exception {
+        int clients = argv.length > 0 ? Integer.parseInt(argv[0]) : 64;
+        int requests = argv.length > 1 ? Integer.parseInt(argv[1]) : 200;
+        int cores = Runtime.getRuntime().availableProcessors();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));  // the servers print every header line
+        List<String> results = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {  // first round is JIT warmup
+            results.clear();
+            results.add(measure("nio single reactor", nio(0), clients, requests));
+            results.add(measure("nio " + cores + " workers", nio(cores), clients, requests));
+            results.add(measure("platform threads", threads(false, clients), clients, requests));
+            results.add(measure("virtual threads", threads(true, clients), clients, requests));
+        }
+        System.setOut(console);
+        System.out.format("%d clients x %d requests, %d cores\n", clients, requests, cores);
+        for (String r : results) {
+            System.out.println(r);
+        }
+    }
+}
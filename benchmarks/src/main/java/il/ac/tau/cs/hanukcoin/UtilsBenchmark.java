@@ -0,0 +1,69 @@
+package il.ac.tau.cs.hanukcoin;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HanukCoinUtils primitives.
+ * intFromBytes vs. DataInputStream.readInt is the comparison HanukCoinUtilsTest used to time by hand.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "--enable-preview"})
+public class UtilsBenchmark {
+    @Param({"5", "1000", "1048576"})
+    long n;
+
+    byte[] data = new byte[36];
+    byte[] sig;
+    byte[] sig2;
+    int value = 0xDeadBeef;
+
+    @Setup
+    public void setup() {
+        Block b = BenchData.syntheticChain(2).get(1);
+        System.arraycopy(b.getBytes(), 0, data, 0, 36);
+        sig = b.calcSignature();
+        sig2 = sig.clone();
+        sig2[7] ^= 1;  // differ in the middle
+    }
+
+    @Benchmark
+    public int numBits() {
+        return HanukCoinUtils.numBits(n);
+    }
+
+    @Benchmark
+    public boolean checkSignatureZeros() {
+        return HanukCoinUtils.checkSignatureZeros(sig, 20 + HanukCoinUtils.numBits(n));
+    }
+
+    @Benchmark
+    public int arraysPartCompare() {
+        return HanukCoinUtils.ArraysPartCompare(12, sig, 0, sig2, 0);
+    }
+
+    @Benchmark
+    public int intFromBytes() {
+        return HanukCoinUtils.intFromBytes(data, 4);
+    }
+
+    @Benchmark
+    public int dataInputStreamReadInt() throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, 4, 4));
+        return dis.readInt();
+    }
+
+    @Benchmark
+    public byte[] intIntoBytes() {
+        HanukCoinUtils.intIntoBytes(data, 4, value);
+        return data;
+    }
+}
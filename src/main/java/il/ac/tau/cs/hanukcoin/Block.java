@@ -12,8 +12,7 @@ package il.ac.tau.cs.hanukcoin;
 
 
 import java.io.*;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -24,6 +23,8 @@ public class Block {
     public static final int BLOCK_SZ = 36;
     public enum BlockError {OK, BAD_SERIAL_NO, SAME_WALLET_PREV, NO_PREV_SIG, SIG_NO_ZEROS, SIG_BAD}
     protected byte[] data;
+    // MD5 kernel per thread - the kernel keeps state between calls so it cannot be shared
+    private static final ThreadLocal<Md5Kernel> MD5 = ThreadLocal.withInitial(Md5Kernel::new);
     public int getSerialNumber() {
         return HanukCoinUtils.intFromBytes(data, 0);
     }
@@ -31,6 +32,20 @@ public class Block {
         return HanukCoinUtils.intFromBytes(data, 4);
     }
 
+    /**
+     * @return first 8 bytes of the signature as big-endian long - what the next block holds as prevSig
+     */
+    public long getSigPrefix() {
+        return ((long) HanukCoinUtils.intFromBytes(data, 24) << 32) | (HanukCoinUtils.intFromBytes(data, 28) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return prevSig as big-endian long - equals getSigPrefix() of the previous block
+     */
+    public long getPrevSigPrefix() {
+        return ((long) HanukCoinUtils.intFromBytes(data, 8) << 32) | (HanukCoinUtils.intFromBytes(data, 12) & 0xFFFFFFFFL);
+    }
+
     /**
      * Creste a block without a signature or puzzle fields.
      * @param serialNumber
@@ -53,6 +68,25 @@ public class Block {
         return b;
     }
 
+    /**
+     * Create a block with all 36 bytes zero - e.g. to be filled later by loadFrom()
+     * @return new block
+     */
+    public static Block createEmpty() {
+        Block b = new Block();
+        b.data = new byte[BLOCK_SZ];
+        return b;
+    }
+
+    /**
+     * Copy 36 bytes from src[offset] into this block - lets one Block object act as a view on packed storage
+     * @param src - buffer holding blocks
+     * @param offset - absolute offset of the block in src
+     */
+    void loadFrom(ByteBuffer src, int offset) {
+        src.get(offset, data, 0, BLOCK_SZ);
+    }
+
     public static Block readFrom(DataInputStream dis) throws IOException {
         Block b = new Block();
         b.data = new byte[BLOCK_SZ];
@@ -100,13 +134,11 @@ public class Block {
      * @return  16 byte MD5 signature
      */
     public byte[] calcSignature() {
-        try {
-            MessageDigest md = MessageDigest.getInstance("MD5");  // may cause NoSuchAlgorithmException
-            md.update(data, 0, 24);
-            return md.digest();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Internal error - missing MD5");
-        }
+        Md5Kernel md5 = MD5.get();
+        md5.digest(data);
+        byte[] sig = new byte[16];
+        md5.writeSignature(sig, 0, 16);
+        return sig;
     }
 
     /**
@@ -122,13 +154,15 @@ public class Block {
      * @return BlockError: SIG_NO_ZEROS or SIG_BAD or OK
      */
     public BlockError checkSignature() {
-        byte[] sig = calcSignature();
+        // use the kernel directly - no MessageDigest and no signature array per call
+        Md5Kernel md5 = MD5.get();
+        md5.digest(data);
         int serialNum = getSerialNumber();
         int nZeros = HanukCoinUtils.numberOfZerosForPuzzle(serialNum);
-        if (!HanukCoinUtils.checkSignatureZeros(sig, nZeros)) {
+        if (!md5.hasZeros(nZeros)) {
             return BlockError.SIG_NO_ZEROS;
         }
-        if (!HanukCoinUtils.ArraysPartEquals(12, data, 24, sig, 0)) {
+        if (!md5.signatureEquals(data, 24)) {
             return BlockError.SIG_BAD;
         }
         return BlockError.OK;
@@ -140,6 +174,19 @@ public class Block {
      * @return BlockError
      */
     public BlockError checkValidNext(Block prevBlock) {
+        BlockError result = checkLinkage(prevBlock);
+        if (result != BlockError.OK) {
+            return result;
+        }
+        return checkSignature();
+    }
+
+    /**
+     * The cheap part of checkValidNext() - serial number, wallet and prevSig compared to previous block. No MD5.
+     * @param prevBlock
+     * @return BlockError: BAD_SERIAL_NO, SAME_WALLET_PREV, NO_PREV_SIG or OK
+     */
+    public BlockError checkLinkage(Block prevBlock) {
         if (getSerialNumber() !=  prevBlock.getSerialNumber() + 1) {
             return BlockError.BAD_SERIAL_NO;  // bad serial number - should be prev + 1
         }
@@ -149,7 +196,7 @@ public class Block {
         if (!HanukCoinUtils.ArraysPartEquals(8, data, 8, prevBlock.data, 24)) {
             return BlockError.NO_PREV_SIG;  // check prevSig field is indeed siganute of prev block
         }
-        return checkSignature();
+        return BlockError.OK;
     }
 
     /**
@@ -0,0 +1,289 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The node's copy of the block chain.
+ * Blocks are kept packed in a PackedChainStore - get() returns a copy, view() fills a reusable Block.
+ * The tip is also kept as a Block object - the same object is returned until the tip changes.
+ * All access is synchronized - the chain is shared by the miner, the server connections and gossip.
+ * Except getTipVersion() - a volatile the miner polls without the lock.
+ * Listeners are called after the change, outside the lock, on the thread that made the change.
+ * Except blockAppended()/blockRemoved() - these are called inside the lock so they are seen in chain order.
+ */
+public class BlockChain {
+    /**
+     * Get notified when the chain changes
+     */
+    public interface ChainListener {
+        /**
+         * Last block of the chain changed - either a block was appended or another chain was adopted
+         * @param newTip - new last block
+         */
+        void tipChanged(Block newTip);
+
+        /**
+         * A block was added at the end. Called inside the chain lock - keep it short.
+         * @param b - the new block. May be a reused view - do not keep it
+         */
+        default void blockAppended(Block b) {
+        }
+
+        /**
+         * The last block was removed - on reorg. Called inside the chain lock, last block first.
+         * @param b - the removed block. May be a reused view - do not keep it
+         */
+        default void blockRemoved(Block b) {
+        }
+    }
+
+    private final PackedChainStore blocks;
+    private Block tip;
+    // bumped inside the lock on every tip change - polled without the lock (see getTipVersion)
+    private volatile long tipVersion = 0;
+    // signature prefix (first 8 bytes) -> serial number, to find where another chain forks from ours
+    private final HashMap<Long, Integer> sigIndex = new HashMap<>();
+    private final List<ChainListener> listeners = new CopyOnWriteArrayList<>();
+    private final Block eventView = Block.createEmpty();
+
+    public BlockChain(Block genesis) {
+        this(genesis, false);
+    }
+
+    /**
+     * @param genesis - first block
+     * @param offHeap - keep blocks in off-heap memory
+     */
+    public BlockChain(Block genesis, boolean offHeap) {
+        blocks = new PackedChainStore(PackedChainStore.INITIAL_CAPACITY, offHeap);
+        appendInternal(genesis.clone());
+    }
+
+    public void addListener(ChainListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ChainListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    public synchronized Block getTip() {
+        return tip;
+    }
+
+    /**
+     * Lock-free - for code that polls often, e.g. the miner's stop condition.
+     * Read it before getTip() - if it differs later the tip changed (it may also change in the middle of a reorg).
+     * @return number that changes whenever the tip changes
+     */
+    public long getTipVersion() {
+        return tipVersion;
+    }
+
+    /**
+     * @return copy of block serialNumber
+     */
+    public synchronized Block get(int serialNumber) {
+        return blocks.view(serialNumber, null);
+    }
+
+    /**
+     * Read block serialNumber into a reusable block - no allocation
+     * @return reuse, filled
+     */
+    public synchronized Block view(int serialNumber, Block reuse) {
+        return blocks.view(serialNumber, reuse);
+    }
+
+    /**
+     * @return copy of the block list
+     */
+    public synchronized List<Block> getBlocks() {
+        ArrayList<Block> copy = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            copy.add(blocks.view(i, null));
+        }
+        return copy;
+    }
+
+    /**
+     * Write all blocks in wire format - straight from the packed store
+     */
+    public synchronized void writeBlocks(DataOutputStream dos) throws IOException {
+        blocks.writeTo(dos, 0, blocks.size());
+    }
+
+    /**
+     * Put all blocks in wire format into dst - e.g. a direct buffer for the socket
+     */
+    public synchronized void writeBlocks(ByteBuffer dst) {
+        blocks.copyTo(dst, 0, blocks.size());
+    }
+
+    /**
+     * Write blocks from..size()-1 in wire format
+     */
+    public synchronized void writeBlocks(DataOutputStream dos, int from) throws IOException {
+        blocks.writeTo(dos, from, blocks.size());
+    }
+
+    /**
+     * Add a block at the end of the chain if it is a valid next block
+     * @param newBlock - block to add. Must not be changed after it is added
+     * @return BlockError.OK if added, otherwise the reason it was rejected
+     */
+    public Block.BlockError append(Block newBlock) {
+        synchronized (this) {
+            Block.BlockError result = newBlock.checkValidNext(getTip());
+            if (result != Block.BlockError.OK) {
+                return result;
+            }
+            appendInternal(newBlock);
+        }
+        fireTipChanged(newBlock);
+        return Block.BlockError.OK;
+    }
+
+    /**
+     * Replace our chain with another, already validated, chain
+     * @param newBlocks - full chain starting with genesis
+     */
+    public void replace(List<Block> newBlocks) {
+        Block newTip;
+        synchronized (this) {
+            truncateInternal(0);
+            for (Block b : newBlocks) {
+                appendInternal(b);
+            }
+            newTip = tip;
+        }
+        fireTipChanged(newTip);
+    }
+
+    /**
+     * Replace the blocks after forkPoint with an already validated suffix - if it is still better than ours.
+     * @param forkPoint - serial number of the last block we keep
+     * @param forkBlock - the block the suffix was validated against. If ours changed since - nothing is done
+     * @param suffix - blocks forkPoint+1, forkPoint+2 ...
+     * @return true if adopted
+     */
+    public boolean replaceSuffix(int forkPoint, Block forkBlock, List<Block> suffix) {
+        Block newTip;
+        synchronized (this) {
+            if (forkPoint >= blocks.size() || !blocks.blockEquals(forkPoint, forkBlock)) {
+                return false;  // our chain changed while the suffix was validated
+            }
+            Block otherTip = suffix.isEmpty() ? forkBlock : suffix.get(suffix.size() - 1);
+            if (!isBetter(forkPoint + 1 + suffix.size(), otherTip)) {
+                return false;
+            }
+            truncateInternal(forkPoint + 1);
+            for (Block b : suffix) {
+                appendInternal(b);
+            }
+            newTip = tip;
+        }
+        fireTipChanged(newTip);
+        return true;
+    }
+
+    /**
+     * @param sigPrefix - first 8 bytes of a signature - see Block.getSigPrefix()
+     * @return serial number of our block with this signature prefix OR -1
+     */
+    public synchronized int findBySigPrefix(long sigPrefix) {
+        Integer serial = sigIndex.get(sigPrefix);
+        return serial == null ? -1 : serial;
+    }
+
+    /**
+     * @return true if our block i has exactly the bytes of b. Any i is allowed - e.g. a serial number from a peer
+     */
+    public synchronized boolean blockEquals(int i, Block b) {
+        return i >= 0 && i < blocks.size() && blocks.blockEquals(i, b);
+    }
+
+    /**
+     * Append blocks that were validated before - e.g. loaded from our own ChainLog. Nothing is checked.
+     * Listeners are not called - this is for building the chain at startup.
+     * @param src - buffer holding count blocks back to back
+     * @param offset - absolute offset of first block in src
+     * @param count - number of blocks
+     */
+    synchronized void appendTrusted(ByteBuffer src, int offset, int count) {
+        if (count <= 0) {
+            return;
+        }
+        int first = blocks.size();
+        blocks.appendAll(src, offset, count);
+        for (int i = first; i < blocks.size(); i++) {
+            sigIndex.put(blocks.getSigPrefix(i), i);
+            if (!listeners.isEmpty()) {
+                fireBlockAppended(blocks.view(i, eventView));
+            }
+        }
+        tip = blocks.view(blocks.size() - 1, null);
+        tipVersion++;
+    }
+
+    private void appendInternal(Block b) {
+        sigIndex.put(b.getSigPrefix(), blocks.size());
+        blocks.append(b);
+        tip = b;
+        tipVersion++;
+        fireBlockAppended(b);
+    }
+
+    private void truncateInternal(int newSize) {
+        for (int i = blocks.size() - 1; i >= newSize; i--) {
+            sigIndex.remove(blocks.getSigPrefix(i));
+            if (!listeners.isEmpty()) {
+                fireBlockRemoved(blocks.view(i, eventView));
+            }
+        }
+        blocks.truncate(newSize);
+        tip = newSize > 0 ? blocks.view(newSize - 1, null) : null;
+        tipVersion++;
+    }
+
+    /**
+     * Fork choice rule - longer chain wins, on equal length the smaller last puzzle wins.
+     * @param otherSize - number of blocks in other chain
+     * @param otherTip - last block of other chain
+     * @return true if other chain is better than ours
+     */
+    public synchronized boolean isBetter(int otherSize, Block otherTip) {
+        if (otherSize != blocks.size()) {
+            return otherSize > blocks.size();
+        }
+        return otherTip.comparePuzzle(getTip()) < 0;
+    }
+
+    private void fireBlockAppended(Block b) {
+        for (ChainListener listener : listeners) {
+            listener.blockAppended(b);
+        }
+    }
+
+    private void fireBlockRemoved(Block b) {
+        for (ChainListener listener : listeners) {
+            listener.blockRemoved(b);
+        }
+    }
+
+    protected void fireTipChanged(Block newTip) {
+        for (ChainListener listener : listeners) {
+            listener.tipChanged(newTip);
+        }
+    }
+}
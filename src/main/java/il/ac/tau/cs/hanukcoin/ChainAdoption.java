@@ -0,0 +1,103 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.List;
+
+/**
+ * Adopt a block list received from a peer - validating only what we do not already have.
+ * Our chain is already validated. A received block that is byte-identical to our block with the same serial
+ * number is trusted, and so is everything before it in our chain. So we look for the fork point - the last
+ * received block we have - using the signature index of BlockChain, and run checkValidNext() only on the
+ * received blocks after it. The cost of an exchange grows with the divergence, not with the chain length.
+ * A long suffix (e.g. after a resync) is validated on all cores by ParallelChainValidator.
+ * With a ForkTree, a valid suffix that loses the fork choice is kept there - if it wins later we switch without
+ * receiving it again. Only within the tree's validation budget - see ForkTree.reserveValidation().
+ */
+public class ChainAdoption {
+    /**
+     * Outcome of one adoption attempt
+     * @param error - OK, or why the received list is invalid
+     * @param badIndex - index of first invalid block, -1 if none
+     * @param forkPoint - last block shared with our chain, -1 if even genesis differs
+     * @param validated - number of blocks that were validated (hashed)
+     * @param adopted - true if our chain now has the received blocks
+     */
+    public record Result(Block.BlockError error, int badIndex, int forkPoint, int validated, boolean adopted) {
+    }
+
+    private final BlockChain chain;
+    private final ParallelChainValidator validator;
+    private ForkTree forkTree = null;
+
+    public ChainAdoption(BlockChain chain, ParallelChainValidator validator) {
+        this.chain = chain;
+        this.validator = validator;
+    }
+
+    public ChainAdoption(BlockChain chain) {
+        this(chain, new ParallelChainValidator());
+    }
+
+    /**
+     * Keep valid losing branches in tree
+     */
+    public void setForkTree(ForkTree forkTree) {
+        this.forkTree = forkTree;
+    }
+
+    /**
+     * Find the last received block that we have too
+     * @param received - block list from a peer, starting at genesis
+     * @return index of the fork point OR -1 if no common block
+     */
+    public int findForkPoint(List<Block> received) {
+        // walk back from the end - usually the chains share all but the last few blocks
+        for (int i = Math.min(received.size(), chain.size()) - 1; i >= 0; i--) {
+            Block b = received.get(i);
+            if (chain.findBySigPrefix(b.getSigPrefix()) == i && chain.blockEquals(i, b)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Validate the received list after the fork point and adopt it if it wins the fork choice
+     * @param received - block list from a peer, starting at genesis
+     * @return what happened
+     */
+    public Result adopt(List<Block> received) {
+        int forkPoint = findForkPoint(received);
+        if (forkPoint < 0) {
+            // not even genesis in common - another network
+            return new Result(Block.BlockError.NO_PREV_SIG, 0, -1, 0, false);
+        }
+        if (forkPoint == received.size() - 1) {
+            return new Result(Block.BlockError.OK, -1, forkPoint, 0, false);  // nothing new
+        }
+        if (!chain.isBetter(received.size(), received.get(received.size() - 1))) {
+            return keepLosingBranch(received, forkPoint);
+        }
+        ParallelChainValidator.Result validation = validator.validate(received, forkPoint + 1);
+        if (!validation.isOk()) {
+            int index = validation.index();
+            return new Result(validation.error(), index, forkPoint, index - forkPoint, false);
+        }
+        List<Block> suffix = received.subList(forkPoint + 1, received.size());
+        boolean adopted = chain.replaceSuffix(forkPoint, received.get(forkPoint), suffix);
+        return new Result(Block.BlockError.OK, -1, forkPoint, suffix.size(), adopted);
+    }
+
+    private Result keepLosingBranch(List<Block> received, int forkPoint) {
+        if (forkTree == null || forkTree.contains(received.get(received.size() - 1).getSigPrefix())
+                || !forkTree.reserveValidation(received.size() - forkPoint - 1)) {
+            return new Result(Block.BlockError.OK, -1, forkPoint, 0, false);
+        }
+        ParallelChainValidator.Result validation = validator.validate(received, forkPoint + 1);
+        int end = validation.isOk() ? received.size() : validation.index();
+        for (int i = forkPoint + 1; i < end; i++) {
+            forkTree.add(received.get(i));  // the valid part - a bad block and what follows it are dropped
+        }
+        int validated = validation.isOk() ? end - forkPoint - 1 : end - forkPoint;
+        return new Result(validation.error(), validation.index(), forkPoint, validated, false);
+    }
+}
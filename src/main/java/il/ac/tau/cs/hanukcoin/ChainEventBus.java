@@ -0,0 +1,287 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Publish chain and node changes to any number of Flow subscribers - persistence, gossip, dashboards.
+ * publish() never blocks: every subscriber has its own bounded buffer, and when a slow subscriber's buffer is
+ * full its Policy decides what is lost. Events are delivered on an Executor, in order, within the demand the
+ * subscriber asked for with request(n).
+ * attach() turns BlockChain listener calls into TipChanged and Reorg events. NodeAdded / NodeExpired are published
+ * by whoever keeps the node list.
+ */
+public class ChainEventBus implements Flow.Publisher<ChainEventBus.ChainEvent> {
+    public sealed interface ChainEvent permits TipChanged, Reorg, NodeAdded, NodeExpired {
+    }
+
+    /**
+     * @param tip - new last block
+     * @param height - number of blocks in the chain
+     */
+    public record TipChanged(Block tip, int height) implements ChainEvent {
+    }
+
+    /**
+     * Blocks after forkPoint were replaced - always followed by TipChanged
+     * @param forkPoint - serial number of last block that was kept
+     * @param removed - number of blocks removed
+     * @param added - number of blocks added after forkPoint
+     */
+    public record Reorg(int forkPoint, int removed, int added) implements ChainEvent {
+    }
+
+    public record NodeAdded(ShowChain3.NodeInfo node) implements ChainEvent {
+    }
+
+    public record NodeExpired(ShowChain3.NodeInfo node) implements ChainEvent {
+    }
+
+    /**
+     * What to do when a subscriber's buffer is full
+     */
+    public enum Policy {
+        DROP_OLDEST,  // make room by dropping the oldest buffered event
+        DROP_NEWEST,  // drop the new event
+        COALESCE      // a new TipChanged replaces a buffered one (only the latest tip matters), otherwise DROP_OLDEST
+    }
+
+    private final Executor executor;
+    private final List<BusSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final int defaultCapacity;
+    private final Policy defaultPolicy;
+    private volatile boolean closed = false;
+    private final List<Runnable> detachers = new CopyOnWriteArrayList<>();  // remove attach() listeners
+
+    /**
+     * @param executor - runs the deliveries
+     * @param defaultCapacity - buffer size for subscribe(subscriber)
+     * @param defaultPolicy - policy for subscribe(subscriber)
+     */
+    public ChainEventBus(Executor executor, int defaultCapacity, Policy defaultPolicy) {
+        this.executor = executor;
+        this.defaultCapacity = defaultCapacity;
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    public ChainEventBus() {
+        this(ForkJoinPool.commonPool(), 256, Policy.COALESCE);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChainEvent> subscriber) {
+        subscribe(subscriber, defaultCapacity, defaultPolicy);
+    }
+
+    /**
+     * @param capacity - events buffered for this subscriber
+     * @param policy - what to drop when the buffer is full
+     * @return the subscription - e.g. to read getDroppedCount()
+     */
+    public BusSubscription subscribe(Flow.Subscriber<? super ChainEvent> subscriber, int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        BusSubscription s = new BusSubscription(subscriber, capacity, policy);
+        subscriptions.add(s);
+        subscriber.onSubscribe(s);
+        if (closed) {
+            s.complete();
+        }
+        return s;
+    }
+
+    /**
+     * Offer event to every subscriber - never blocks. Ignored after close() - the publisher may be
+     * a chain listener that must not fail the chain change.
+     */
+    public void publish(ChainEvent event) {
+        if (closed) {
+            return;
+        }
+        for (BusSubscription s : subscriptions) {
+            s.offer(event);
+        }
+    }
+
+    public int getSubscribersCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Stop publishing and detach from the chains - subscribers get onComplete() after their buffered events
+     */
+    public void close() {
+        closed = true;
+        for (Runnable detach : detachers) {
+            detach.run();
+        }
+        detachers.clear();
+        for (BusSubscription s : subscriptions) {
+            s.complete();
+        }
+    }
+
+    /**
+     * Publish TipChanged and Reorg events for changes of chain
+     */
+    public void attach(BlockChain chain) {
+        BlockChain.ChainListener listener = new BlockChain.ChainListener() {
+            // blockRemoved/blockAppended are called inside the chain lock, tipChanged right after, outside it
+            private int removed = 0;
+            private int added = 0;
+            private int lowestRemoved = Integer.MAX_VALUE;
+
+            @Override
+            public void tipChanged(Block newTip) {
+                Reorg reorg = null;
+                synchronized (this) {
+                    if (removed > 0) {
+                        reorg = new Reorg(lowestRemoved - 1, removed, added);
+                    }
+                    removed = 0;
+                    added = 0;
+                    lowestRemoved = Integer.MAX_VALUE;
+                }
+                if (reorg != null) {
+                    publish(reorg);
+                }
+                publish(new TipChanged(newTip, newTip.getSerialNumber() + 1));
+            }
+
+            @Override
+            public synchronized void blockAppended(Block b) {
+                added++;
+            }
+
+            @Override
+            public synchronized void blockRemoved(Block b) {
+                removed++;
+                lowestRemoved = Math.min(lowestRemoved, b.getSerialNumber());
+            }
+        };
+        chain.addListener(listener);
+        detachers.add(() -> chain.removeListener(listener));
+    }
+
+    /**
+     * One subscriber - its buffer, demand and delivery state.
+     * At most one delivery task per subscription runs at a time, so onNext() calls are never concurrent.
+     */
+    public class BusSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ChainEvent> subscriber;
+        private final ArrayDeque<ChainEvent> buffer = new ArrayDeque<>();
+        private final int capacity;
+        private final Policy policy;
+        private long demand = 0;
+        private long dropped = 0;
+        private boolean cancelled = false;
+        private boolean completed = false;  // no more events - onComplete after the buffer
+        private boolean draining = false;
+
+        BusSubscription(Flow.Subscriber<? super ChainEvent> subscriber, int capacity, Policy policy) {
+            this.subscriber = subscriber;
+            this.capacity = capacity;
+            this.policy = policy;
+        }
+
+        /**
+         * @return number of events this subscriber lost because its buffer was full
+         */
+        public synchronized long getDroppedCount() {
+            return dropped;
+        }
+
+        synchronized void offer(ChainEvent event) {
+            if (cancelled || completed) {
+                return;
+            }
+            if (policy == Policy.COALESCE && event instanceof TipChanged && buffer.removeIf(e -> e instanceof TipChanged)) {
+                dropped++;
+            }
+            if (buffer.size() >= capacity) {
+                dropped++;
+                if (policy == Policy.DROP_NEWEST) {
+                    return;
+                }
+                buffer.pollFirst();
+            }
+            buffer.addLast(event);
+            schedule();
+        }
+
+        synchronized void complete() {
+            completed = true;
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                if (n > 0) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;  // overflow - unbounded
+                    schedule();
+                    return;
+                }
+                cancelled = true;
+            }
+            subscriptions.remove(this);
+            subscriber.onError(new IllegalArgumentException("request must be positive - rule 3.9"));
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+            }
+            subscriptions.remove(this);
+        }
+
+        // caller holds the lock
+        private void schedule() {
+            if (!draining && !cancelled && (demand > 0 && !buffer.isEmpty() || completed && buffer.isEmpty())) {
+                draining = true;
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                ChainEvent event;
+                synchronized (this) {
+                    if (cancelled) {
+                        draining = false;
+                        return;
+                    }
+                    if (buffer.isEmpty() && completed) {
+                        cancelled = true;  // done - nothing more to deliver
+                        draining = false;
+                        subscriptions.remove(this);
+                        break;
+                    }
+                    if (demand == 0 || buffer.isEmpty()) {
+                        draining = false;
+                        return;
+                    }
+                    event = buffer.pollFirst();
+                    demand--;
+                }
+                try {
+                    subscriber.onNext(event);
+                } catch (RuntimeException e) {
+                    cancel();  // a throwing subscriber is dropped - it must not stall the others
+                    return;
+                }
+            }
+            subscriber.onComplete();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped file of the block chain - so it survives a restart.
+ * Layout: a HEADER_SZ bytes header followed by fixed BLOCK_SZ byte records, record i is block i.
+ * Header (big-endian):
+ *   long magic, int version, int recordSize, int count, long tipSigPrefix, long tailCrc, long headerCrc
+ * The header is the tail marker - count and tip are only updated after the record itself is written,
+ * so a crash in the middle of an append loses at most that block.
+ * tailCrc is a CRC32 of the last record, headerCrc a CRC32 of the header fields before it.
+ * On open, if both match the file is trusted as is. If not, records are scanned with Block.checkLinkage()
+ * (no MD5) to find how far they link, and the log is cut after the last one that is fully valid.
+ * Linkage alone does not catch a torn record (it may straddle a page) with garbage in its wallet, puzzle or
+ * signature - so only records the header CRC vouches for are trusted (all but the tail record, if the header CRC
+ * matches, otherwise only genesis). The others must pass checkValidNext() - signatures are checked in parallel.
+ * On reorg the log is truncated back to the fork point - the dropped records are zeroed first, so a crash
+ * before the header is rewritten cannot bring them back in recovery (they would still link to each other).
+ * A file that does not start with our magic is not touched - open() fails.
+ */
+public class ChainLog implements Closeable {
+    static final long MAGIC = 0x484e4b434841494eL;  // "HNKCHAIN"
+    static final int VERSION = 1;
+    static final int HEADER_SZ = 64;
+    static final int GROW_BLOCKS = 4096;  // map this many more records each time the file grows
+    private static final int COUNT_OFFSET = 16;
+    private static final int TIP_OFFSET = 20;
+    private static final int TAIL_CRC_OFFSET = 28;
+    private static final int HEADER_CRC_OFFSET = 36;
+    private static final byte[] ZERO_RECORD = new byte[Block.BLOCK_SZ];
+
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int count = 0;
+    private boolean recovered = false;
+    private final Block view = Block.createEmpty();
+
+    private ChainLog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Open or create a chain log
+     * @param file - log file path
+     * @return open log - see recovered() to know if the tail marker was bad
+     * @throws IOException also if file is not a chain log
+     */
+    public static ChainLog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        long magic = size > 0 ? magicOf(channel) : 0;
+        if (magic != MAGIC && magic != 0) {
+            // 0 - we crashed after growing a new file, before its first header
+            channel.close();
+            throw new IOException("Not a chain log: " + file);
+        }
+        ChainLog log = new ChainLog(channel);
+        log.mapCapacity(Math.max(size, HEADER_SZ + (long) GROW_BLOCKS * Block.BLOCK_SZ));
+        if (size < HEADER_SZ || log.map.getLong(0) != MAGIC) {
+            log.writeHeader();  // new file - start empty
+        } else if (!log.headerValid()) {
+            log.recover();
+        } else {
+            log.count = log.map.getInt(COUNT_OFFSET);
+        }
+        return log;
+    }
+
+    /**
+     * @return first 8 bytes of the file - -1 if shorter
+     */
+    private static long magicOf(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(8);
+        while (magic.hasRemaining()) {
+            if (channel.read(magic, magic.position()) < 0) {
+                return -1;
+            }
+        }
+        return magic.getLong(0);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return true if the tail marker did not match on open and the log was rebuilt from the records
+     */
+    public boolean recovered() {
+        return recovered;
+    }
+
+    public synchronized void append(Block b) throws IOException {
+        ensureCapacity(count + 1);
+        map.put(recordOffset(count), b.getBytes(), 0, Block.BLOCK_SZ);
+        count++;
+        writeHeader();
+    }
+
+    /**
+     * Drop records from the end - on reorg
+     * @param newSize - number of records to keep
+     */
+    public synchronized void truncate(int newSize) {
+        if (newSize < 0 || newSize > count) {
+            throw new IndexOutOfBoundsException("truncate to " + newSize + " of " + count);
+        }
+        for (int i = newSize; i < count; i++) {
+            map.put(recordOffset(i), ZERO_RECORD);  // before the header - see class comment
+        }
+        count = newSize;
+        writeHeader();
+    }
+
+    public synchronized Block read(int i, Block reuse) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("record " + i + " of " + count);
+        }
+        Block b = reuse != null ? reuse : Block.createEmpty();
+        b.loadFrom(map, recordOffset(i));
+        return b;
+    }
+
+    /**
+     * Make the log hold exactly the blocks of chain - cut back to the last common block and append the rest.
+     * Cost grows with the number of changed blocks, not with the chain length.
+     */
+    public synchronized void persist(BlockChain chain) throws IOException {
+        int chainSize = chain.size();
+        int common = Math.min(count, chainSize);
+        while (common > 0 && !chain.blockEquals(common - 1, read(common - 1, view))) {
+            common--;
+        }
+        if (common < count) {
+            truncate(common);
+        }
+        for (int i = common; i < chainSize; i++) {
+            append(chain.view(i, view));
+        }
+    }
+
+    /**
+     * Build a chain from the log - records are copied in bulk into the chain store, not parsed block by block.
+     * Blocks are trusted (the log only holds blocks that were validated before being appended, or by recover()).
+     * @return chain OR null if the log is empty
+     */
+    public synchronized BlockChain loadChain(boolean offHeap) {
+        if (count == 0) {
+            return null;
+        }
+        BlockChain chain = new BlockChain(read(0, null), offHeap);
+        chain.appendTrusted(map, recordOffset(1), count - 1);
+        return chain;
+    }
+
+    /**
+     * Flush the mapped pages to disk
+     */
+    public synchronized void force() {
+        map.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static int recordOffset(int i) {
+        return HEADER_SZ + i * Block.BLOCK_SZ;
+    }
+
+    private void ensureCapacity(int records) throws IOException {
+        long needed = recordOffset(records);
+        if (needed > map.capacity()) {
+            mapCapacity(needed + (long) GROW_BLOCKS * Block.BLOCK_SZ);
+        }
+    }
+
+    private void mapCapacity(long bytes) throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);  // grows the file if needed
+    }
+
+    private long tailCrc() {
+        if (count == 0) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(recordOffset(count - 1), Block.BLOCK_SZ));
+        return crc.getValue();
+    }
+
+    private long headerCrc() {
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(0, HEADER_CRC_OFFSET));
+        return crc.getValue();
+    }
+
+    private void writeHeader() {
+        map.putLong(0, MAGIC);
+        map.putInt(8, VERSION);
+        map.putInt(12, Block.BLOCK_SZ);
+        map.putInt(COUNT_OFFSET, count);
+        map.putLong(TIP_OFFSET, count == 0 ? 0 : map.getLong(recordOffset(count - 1) + 24));
+        map.putLong(TAIL_CRC_OFFSET, tailCrc());
+        map.putLong(HEADER_CRC_OFFSET, headerCrc());
+    }
+
+    private boolean headerCrcValid() {
+        return map.getInt(8) == VERSION && map.getInt(12) == Block.BLOCK_SZ && map.getLong(HEADER_CRC_OFFSET) == headerCrc();
+    }
+
+    private boolean headerValid() {
+        if (!headerCrcValid()) {
+            return false;
+        }
+        count = map.getInt(COUNT_OFFSET);
+        if (count < 0 || recordOffset(count) > map.capacity()) {
+            return false;
+        }
+        boolean valid = map.getLong(TAIL_CRC_OFFSET) == tailCrc()
+                && (count == 0 || map.getLong(TIP_OFFSET) == map.getLong(recordOffset(count - 1) + 24));
+        count = 0;
+        return valid;
+    }
+
+    /**
+     * Bad tail marker - keep the longest prefix of valid records. See class comment for what is trusted.
+     */
+    private void recover() throws IOException {
+        recovered = true;
+        int maxRecords = (int) ((channel.size() - HEADER_SZ) / Block.BLOCK_SZ);
+        // the tail record itself is what the tail CRC did not match - trust only the ones before it
+        int trusted = headerCrcValid() ? Math.max(0, Math.min(map.getInt(COUNT_OFFSET), maxRecords) - 1) : 0;
+        Block prev = Block.createEmpty();
+        Block cur = Block.createEmpty();
+        int n = 0;
+        if (maxRecords > 0) {
+            cur.loadFrom(map, recordOffset(0));
+            // first record must be a genesis block - not a zeroed (truncated) record
+            n = cur.getSerialNumber() == 0 && !cur.equals(Block.createEmpty()) ? 1 : 0;
+        }
+        while (n > 0 && n < maxRecords) {
+            Block tmp = prev;
+            prev = cur;
+            cur = tmp;
+            cur.loadFrom(map, recordOffset(n));
+            if (cur.checkLinkage(prev) != Block.BlockError.OK) {
+                break;
+            }
+            n++;
+        }
+        int from = Math.max(1, trusted);
+        if (n > from) {
+            List<Block> records = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                Block b = Block.createEmpty();
+                b.loadFrom(map, recordOffset(i));
+                records.add(b);
+            }
+            ParallelChainValidator.Result result = new ParallelChainValidator().validate(records, from);
+            if (!result.isOk()) {
+                n = result.index();
+            }
+        }
+        count = n;
+        writeHeader();
+    }
+}
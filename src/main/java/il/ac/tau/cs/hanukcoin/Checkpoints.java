@@ -0,0 +1,80 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Trusted checkpoints - (serial number, signature prefix) pairs of blocks we know are valid.
+ * A block list that has the checkpoint block, linked all the way to it, has valid blocks up to it -
+ * the validator checks only linkage there and skips the MD5. See ParallelChainValidator.validateLocal().
+ * Only for chains loaded from our own storage (e.g. CompactChainCodec.loadChain). A match is on the signature
+ * prefix and linkage only - a peer can copy the signatures and change wallets or puzzles below the checkpoint,
+ * so blocks received from peers are always fully validated.
+ * Configured locally - a text file with one "serial sigPrefixHex" per line, # starts a comment.
+ */
+public class Checkpoints {
+    /**
+     * @param serial - serial number of the block
+     * @param sigPrefix - first 8 bytes of its signature - see Block.getSigPrefix()
+     */
+    public record Checkpoint(int serial, long sigPrefix) {
+        public static Checkpoint of(Block b) {
+            return new Checkpoint(b.getSerialNumber(), b.getSigPrefix());
+        }
+    }
+
+    public static final Checkpoints NONE = new Checkpoints(new ArrayList<>());
+
+    private final Checkpoint[] descending;  // highest serial first
+
+    public Checkpoints(List<Checkpoint> checkpoints) {
+        descending = checkpoints.toArray(new Checkpoint[0]);
+        Arrays.sort(descending, Comparator.comparingInt(Checkpoint::serial).reversed());
+    }
+
+    public static Checkpoints load(Path file) throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            String[] parts = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+            if (parts.length < 2) {
+                continue;
+            }
+            try {
+                checkpoints.add(new Checkpoint(Integer.parseInt(parts[0]), Long.parseUnsignedLong(parts[1], 16)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad checkpoint line: " + line, e);
+            }
+        }
+        return new Checkpoints(checkpoints);
+    }
+
+    public int size() {
+        return descending.length;
+    }
+
+    /**
+     * Find the highest checkpoint block in a list of consecutive blocks
+     * @param blocks - blocks with consecutive serial numbers (the validator checks that too)
+     * @return index in blocks of the highest checkpoint block OR -1 if none of them is in the list
+     */
+    public int highestMatching(List<Block> blocks) {
+        if (blocks.isEmpty()) {
+            return -1;
+        }
+        int base = blocks.get(0).getSerialNumber();
+        for (Checkpoint cp : descending) {
+            int i = cp.serial() - base;
+            if (i >= 0 && i < blocks.size() && blocks.get(i).getSigPrefix() == cp.sigPrefix()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
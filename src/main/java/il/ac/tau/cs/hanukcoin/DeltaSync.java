@@ -0,0 +1,282 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delta sync - exchange only the blocks the other side does not have, instead of the full chain each time.
+ * Two new commands use the same frame as cmd=1/cmd=2 (cmd, BEEF, nodes, DEAD, blocks count, blocks):
+ *   cmd=3 - delta request. The block list is a "locator" - our tip first, then our blocks at tip-1, tip-2, tip-4 ...
+ *           down to genesis. log2(height) blocks tell the peer our height, tip and enough to find the common block.
+ *   cmd=4 - delta reply. The block list is the peer's blocks after the last locator block it has,
+ *           or empty if its chain does not win the fork choice against ours.
+ *           The serial number of the first block tells where it connects to our chain.
+ *   cmd=5/cmd=6 - same as cmd=3/cmd=4, but the reply block list is in CompactChainCodec format.
+ * Negotiation - a new peer gets cmd=5. A peer that answers cmd=4 only knows delta and gets cmd=3 from then on.
+ * A classic peer parses cmd=3/5 as a normal message and (hopefully) answers with its full chain in cmd=2,
+ * which is handled by StreamingChainDecoder. A peer that answers with cmd=2, or closes the connection
+ * right after the request without replying, is remembered and gets classic cmd=1 requests from then on.
+ */
+public class DeltaSync {
+    public static final int CMD_REQUEST = 1;
+    public static final int CMD_RESPONSE = 2;
+    public static final int CMD_DELTA_REQUEST = 3;
+    public static final int CMD_DELTA_RESPONSE = 4;
+    public static final int CMD_COMPACT_REQUEST = 5;
+    public static final int CMD_COMPACT_RESPONSE = 6;
+
+    // what a peer supports - higher includes lower
+    static final int LEVEL_CLASSIC = 0;
+    static final int LEVEL_DELTA = 1;
+    static final int LEVEL_COMPACT = 2;
+
+    /**
+     * Outcome of one exchange as a client
+     * @param delta - true if the peer answered with a delta reply
+     * @param blocksReceived - number of blocks in the reply
+     * @param adopted - true if our chain now has the received blocks
+     * @param nodes - node list sent by the peer
+     */
+    public record Result(boolean delta, int blocksReceived, boolean adopted, List<ShowChain3.NodeInfo> nodes) {
+    }
+
+    private final BlockChain chain;
+    private final ParallelChainValidator validator;
+    private final StreamingChainDecoder decoder;
+    private final ConcurrentHashMap<HostPort, Integer> peerLevel = new ConcurrentHashMap<>();
+
+    public DeltaSync(BlockChain chain, ParallelChainValidator validator) {
+        this.chain = chain;
+        this.validator = validator;
+        this.decoder = new StreamingChainDecoder(chain);
+    }
+
+    public DeltaSync(BlockChain chain) {
+        this(chain, new ParallelChainValidator());
+    }
+
+    public boolean supportsDelta(HostPort peer) {
+        return level(peer) >= LEVEL_DELTA;
+    }
+
+    public boolean supportsCompact(HostPort peer) {
+        return level(peer) >= LEVEL_COMPACT;
+    }
+
+    public void markClassic(HostPort peer) {
+        peerLevel.put(peer, LEVEL_CLASSIC);
+    }
+
+    private int level(HostPort peer) {
+        return peerLevel.getOrDefault(peer, LEVEL_COMPACT);  // unknown peer - try the best first
+    }
+
+    /**
+     * @return serial numbers of the locator blocks - tip, tip-1, tip-2, tip-4 ... 0
+     */
+    static List<Integer> locatorSerials(int chainSize) {
+        List<Integer> serials = new ArrayList<>();
+        for (int offset = 0; offset < chainSize - 1; offset = offset == 0 ? 1 : offset * 2) {
+            serials.add(chainSize - 1 - offset);
+        }
+        serials.add(0);
+        return serials;
+    }
+
+    /**
+     * Client side of one exchange - send a request to peer and handle its reply.
+     * Uses cmd=5, cmd=3 or cmd=1 - the best the peer is known to support.
+     * @param nodes - our node list to gossip
+     */
+    public Result exchange(HostPort peer, DataInputStream dis, DataOutputStream dos, List<ShowChain3.NodeInfo> nodes)
+            throws IOException {
+        int level = level(peer);
+        if (level == LEVEL_CLASSIC) {
+            writeFull(dos, CMD_REQUEST, nodes);
+            return readClassic(dis, dis.readInt());
+        }
+        writeLocator(dos, level == LEVEL_COMPACT ? CMD_COMPACT_REQUEST : CMD_DELTA_REQUEST, nodes);
+        int cmd;
+        try {
+            cmd = dis.readInt();
+        } catch (EOFException e) {
+            // closed after our request without a byte of reply - it did not know the cmd. Retry will be classic.
+            // Other errors (reset, timeout, failed write) may be transient and do not downgrade the peer.
+            markClassic(peer);
+            throw e;
+        }
+        if (cmd == CMD_COMPACT_RESPONSE) {
+            return readDelta(dis, true);
+        }
+        if (cmd == CMD_DELTA_RESPONSE) {
+            peerLevel.put(peer, LEVEL_DELTA);
+            return readDelta(dis, false);
+        }
+        markClassic(peer);
+        return readClassic(dis, cmd);
+    }
+
+    /**
+     * Server side - read one request (cmd=1, 3 or 5) and send the reply
+     * @param nodes - our node list to gossip
+     * @return node list sent by the peer
+     */
+    public List<ShowChain3.NodeInfo> serve(DataInputStream dis, DataOutputStream dos, List<ShowChain3.NodeInfo> nodes)
+            throws IOException {
+        int cmd = dis.readInt();
+        if (cmd != CMD_DELTA_REQUEST && cmd != CMD_COMPACT_REQUEST) {
+            StreamingChainDecoder.Decoded d = decoder.decode(cmd, dis);
+            decoder.adopt(d);
+            writeFull(dos, CMD_RESPONSE, nodes);
+            return d.nodes;
+        }
+        ArrayList<ShowChain3.NodeInfo> peerNodes = readNodes(dis);
+        int count = dis.readInt();
+        if (count < 1) {
+            throw new IOException("Bad delta request - empty locator");
+        }
+        Block peerTip = Block.readFrom(dis);
+        int forkPoint = chain.blockEquals(peerTip.getSerialNumber(), peerTip) ? peerTip.getSerialNumber() : -1;
+        Block b = Block.createEmpty();
+        for (int i = 1; i < count; i++) {
+            dis.readFully(b.getBytes());
+            if (forkPoint < 0 && chain.blockEquals(b.getSerialNumber(), b)) {
+                forkPoint = b.getSerialNumber();  // highest common - locator goes down
+            }
+        }
+        writeDelta(dos, cmd == CMD_COMPACT_REQUEST, nodes, peerTip, forkPoint);
+        return peerNodes;
+    }
+
+    // The write* methods build the message in memory under the chain lock and send it after releasing it -
+    // a slow peer must not block the miner and everybody else waiting for the chain.
+
+    private void writeLocator(DataOutputStream dos, int cmd, List<ShowChain3.NodeInfo> nodes) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        writeHeader(out, cmd, nodes);
+        synchronized (chain) {
+            List<Integer> serials = locatorSerials(chain.size());
+            out.writeInt(serials.size());
+            Block view = Block.createEmpty();
+            for (int s : serials) {
+                chain.view(s, view).writeTo(out);
+            }
+        }
+        send(dos, bos);
+    }
+
+    private void writeDelta(DataOutputStream dos, boolean compact, List<ShowChain3.NodeInfo> nodes, Block peerTip,
+                            int forkPoint) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        writeHeader(out, compact ? CMD_COMPACT_RESPONSE : CMD_DELTA_RESPONSE, nodes);
+        synchronized (chain) {
+            // send our blocks only if the peer would take them - ours must beat its chain
+            int peerSize = peerTip.getSerialNumber() + 1;
+            boolean oursBetter = chain.size() != peerSize ? chain.size() > peerSize
+                    : chain.getTip().comparePuzzle(peerTip) < 0;
+            int from = oursBetter ? forkPoint + 1 : chain.size();
+            if (compact) {
+                CompactChainCodec.write(out, chain, from);
+            } else {
+                out.writeInt(chain.size() - from);
+                chain.writeBlocks(out, from);
+            }
+        }
+        send(dos, bos);
+    }
+
+    private void writeFull(DataOutputStream dos, int cmd, List<ShowChain3.NodeInfo> nodes) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        writeHeader(out, cmd, nodes);
+        synchronized (chain) {
+            out.writeInt(chain.size());
+            chain.writeBlocks(out);
+        }
+        send(dos, bos);
+    }
+
+    private static void send(DataOutputStream dos, ByteArrayOutputStream message) throws IOException {
+        message.writeTo(dos);
+        dos.flush();
+    }
+
+    private static void writeHeader(DataOutputStream dos, int cmd, List<ShowChain3.NodeInfo> nodes) throws IOException {
+        dos.writeInt(cmd);
+        dos.writeInt(ShowChain3.BEEF_BEEF);
+        dos.writeInt(nodes.size());
+        for (ShowChain3.NodeInfo n : nodes) {
+            n.writeTo(dos);
+        }
+        dos.writeInt(ShowChain3.DEAD_DEAD);
+    }
+
+    private static ArrayList<ShowChain3.NodeInfo> readNodes(DataInputStream dis) throws IOException {
+        if (dis.readInt() != ShowChain3.BEEF_BEEF) {
+            throw new IOException("Bad message no BeefBeef");
+        }
+        int nodesCount = dis.readInt();
+        ArrayList<ShowChain3.NodeInfo> nodes = new ArrayList<>();
+        for (int ni = 0; ni < nodesCount; ni++) {
+            nodes.add(ShowChain3.NodeInfo.readFrom(dis));
+        }
+        if (dis.readInt() != ShowChain3.DEAD_DEAD) {
+            throw new IOException("Bad message no DeadDead");
+        }
+        return nodes;
+    }
+
+    private Result readClassic(DataInputStream dis, int cmd) throws IOException {
+        StreamingChainDecoder.Decoded d = decoder.decode(cmd, dis);
+        return new Result(false, d.blockCount, decoder.adopt(d), d.nodes);
+    }
+
+    private Result readDelta(DataInputStream dis, boolean compact) throws IOException {
+        ArrayList<ShowChain3.NodeInfo> nodes = readNodes(dis);
+        List<Block> suffix;
+        if (compact) {
+            suffix = CompactChainCodec.read(dis);
+        } else {
+            int count = dis.readInt();
+            if (count < 0 || count > FrameDecoder.MAX_COUNT) {
+                throw new IOException("Bad message blocks count " + count);
+            }
+            suffix = new ArrayList<>();  // grows with blocks actually read - count is from the peer
+            for (int i = 0; i < count; i++) {
+                suffix.add(Block.readFrom(dis));
+            }
+        }
+        int count = suffix.size();
+        return new Result(true, count, count > 0 && adoptSuffix(suffix), nodes);
+    }
+
+    private boolean adoptSuffix(List<Block> suffix) {
+        int forkPoint = suffix.get(0).getSerialNumber() - 1;
+        if (forkPoint < 0) {
+            return new ChainAdoption(chain, validator).adopt(suffix).adopted();  // whole chain - another genesis?
+        }
+        if (forkPoint >= chain.size()) {
+            return false;  // does not connect to our chain
+        }
+        Block forkBlock = chain.get(forkPoint);
+        Block tip = suffix.get(suffix.size() - 1);
+        if (!chain.isBetter(forkPoint + 1 + suffix.size(), tip)) {
+            return false;
+        }
+        List<Block> linked = new ArrayList<>(suffix.size() + 1);
+        linked.add(forkBlock);
+        linked.addAll(suffix);
+        if (!validator.validate(linked, 1).isOk()) {
+            return false;
+        }
+        return chain.replaceSuffix(forkPoint, forkBlock, suffix);
+    }
+}
@@ -0,0 +1,100 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Direct ByteBuffers for socket I/O, reused instead of allocated per connection.
+ * A direct buffer goes to the socket as is - a heap buffer is first copied by the JDK into a temporary direct one.
+ * Sizes are rounded up to a class (4KB, 16KB ... 4MB) and each thread keeps its own free lists, so a reactor
+ * thread borrows and returns without locks. Bigger requests get a one-off buffer that is not kept.
+ * Each class keeps up to MAX_POOLED_BYTES_PER_CLASS worth of buffers per thread (at least one).
+ */
+public class DirectBufferPool {
+    static final int MIN_CLASS_SHIFT = 12;  // 4KB
+    static final int CLASS_SHIFT_STEP = 2;  // x4 between classes
+    static final int CLASSES_COUNT = 6;     // up to 4MB
+    static final int MAX_POOLED_BYTES_PER_CLASS = 1024 * 1024;
+
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> free = ThreadLocal.withInitial(DirectBufferPool::newLists);
+    private final LongAdder allocatedCount = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ByteBuffer>[] newLists() {
+        ArrayDeque<ByteBuffer>[] lists = new ArrayDeque[CLASSES_COUNT];
+        for (int i = 0; i < CLASSES_COUNT; i++) {
+            lists[i] = new ArrayDeque<>();
+        }
+        return lists;
+    }
+
+    static int classSize(int sizeClass) {
+        return 1 << (MIN_CLASS_SHIFT + sizeClass * CLASS_SHIFT_STEP);
+    }
+
+    /**
+     * @return smallest class that holds size bytes OR -1 if too big to pool
+     */
+    static int sizeClass(int size) {
+        for (int c = 0; c < CLASSES_COUNT; c++) {
+            if (size <= classSize(c)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Borrow a buffer - return it with release() when done
+     * @param size - minimal capacity
+     * @return a cleared direct buffer, capacity of its size class
+     */
+    public ByteBuffer acquire(int size) {
+        int c = sizeClass(size);
+        if (c >= 0) {
+            ByteBuffer buf = free.get()[c].pollLast();  // most recently used - likely still in cache
+            if (buf != null) {
+                return buf.clear();
+            }
+        }
+        allocatedCount.increment();
+        return ByteBuffer.allocateDirect(c >= 0 ? classSize(c) : size);
+    }
+
+    /**
+     * Give a buffer back to the calling thread's free list. The caller must not use it afterwards.
+     * @param buf - buffer from acquire() or null
+     */
+    public void release(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) {
+            return;
+        }
+        int c = sizeClass(buf.capacity());
+        if (c < 0 || classSize(c) != buf.capacity()) {
+            return;  // one-off buffer - left to the GC
+        }
+        ArrayDeque<ByteBuffer> list = free.get()[c];
+        if (list.size() < Math.max(1, MAX_POOLED_BYTES_PER_CLASS / classSize(c))) {
+            list.addLast(buf);
+        }
+    }
+
+    /**
+     * @return number of direct buffers allocated so far - stays flat when the pool is warm
+     */
+    public long getAllocatedCount() {
+        return allocatedCount.sum();
+    }
+
+    /**
+     * @return buffers kept by the calling thread
+     */
+    public int getFreeCount() {
+        int n = 0;
+        for (ArrayDeque<ByteBuffer> list : free.get()) {
+            n += list.size();
+        }
+        return n;
+    }
+}
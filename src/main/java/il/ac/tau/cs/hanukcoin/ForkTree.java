@@ -0,0 +1,170 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of competing branches that are not in our chain - so we can switch between branches without
+ * fetching the blocks again. In a mining race the tip flips back and forth; each flip is a switch to blocks
+ * we already hold and already validated.
+ * Blocks are keyed by signature prefix and link to their parent by prevSig. The tree holds at most maxBlocks,
+ * least recently used are dropped first - losing branches age out.
+ * Blocks removed from our chain by a reorg go into the tree, blocks appended to our chain leave it.
+ * switchTo() hands the branch to BlockChain.replaceSuffix() - listeners (e.g. WalletBalanceIndex) then update
+ * incrementally from the removed and appended blocks.
+ * Only validated blocks should be added.
+ * Validating losing branches costs MD5 for blocks that may never win - a peer could send cheap losing forks
+ * forever. reserveValidation() limits that work to a number of blocks per VALIDATION_WINDOW_NANOS.
+ */
+public class ForkTree implements BlockChain.ChainListener {
+    static final long VALIDATION_WINDOW_NANOS = 60_000_000_000L;
+
+    private final BlockChain chain;
+    private final LinkedHashMap<Long, Block> blocks;
+    private final int validationBudget;  // losing branch blocks to validate per window
+    private long windowStart = System.nanoTime();
+    private int validatedInWindow = 0;
+
+    private ForkTree(BlockChain chain, int maxBlocks, int validationBudget) {
+        this.chain = chain;
+        this.validationBudget = validationBudget;
+        this.blocks = new LinkedHashMap<>(16, 0.75f, true) {  // access order - LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Block> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    /**
+     * Create a tree for chain and keep it updated on reorgs
+     * @param maxBlocks - bound on blocks kept
+     */
+    public static ForkTree attach(BlockChain chain, int maxBlocks) {
+        return attach(chain, maxBlocks, maxBlocks);  // at most fill the tree once per window
+    }
+
+    /**
+     * @param maxBlocks - bound on blocks kept
+     * @param validationBudget - bound on losing branch blocks validated per VALIDATION_WINDOW_NANOS
+     */
+    public static ForkTree attach(BlockChain chain, int maxBlocks, int validationBudget) {
+        ForkTree tree = new ForkTree(chain, maxBlocks, validationBudget);
+        chain.addListener(tree);
+        return tree;
+    }
+
+    /**
+     * Ask for the budget to validate a losing branch before keeping it
+     * @param blocksCount - blocks to validate
+     * @return true if granted - false means do not validate (and do not keep) the branch
+     */
+    public synchronized boolean reserveValidation(int blocksCount) {
+        long now = System.nanoTime();
+        if (now - windowStart >= VALIDATION_WINDOW_NANOS) {
+            windowStart = now;
+            validatedInWindow = 0;
+        }
+        if (blocksCount > validationBudget - validatedInWindow) {
+            return false;
+        }
+        validatedInWindow += blocksCount;
+        return true;
+    }
+
+    /**
+     * Keep a validated block that is not in our chain
+     */
+    public synchronized void add(Block b) {
+        blocks.put(b.getSigPrefix(), b);
+    }
+
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    public synchronized boolean contains(long sigPrefix) {
+        return blocks.containsKey(sigPrefix);
+    }
+
+    /**
+     * @param tipSigPrefix - signature prefix of the last block of a branch
+     * @return the branch blocks from the one after our chain up to the tip OR null if it is not connected
+     *   to our chain (tip or some parent not in the tree)
+     */
+    public List<Block> branch(long tipSigPrefix) {
+        ArrayList<Block> branch = new ArrayList<>();
+        synchronized (this) {
+            // only walk the tree here - BlockChain calls us with its lock held, so never call it with ours
+            Block b = blocks.get(tipSigPrefix);
+            while (b != null) {
+                branch.add(b);
+                b = blocks.get(b.getPrevSigPrefix());
+            }
+        }
+        if (branch.isEmpty()) {
+            return null;
+        }
+        Collections.reverse(branch);
+        Block first = branch.get(0);
+        int forkPoint = chain.findBySigPrefix(first.getPrevSigPrefix());
+        if (forkPoint < 0 || forkPoint != first.getSerialNumber() - 1) {
+            return null;
+        }
+        return branch;
+    }
+
+    /**
+     * Make the branch ending at tipSigPrefix our chain - if it wins the fork choice
+     * @return true if switched
+     */
+    public boolean switchTo(long tipSigPrefix) {
+        List<Block> branch = branch(tipSigPrefix);
+        if (branch == null) {
+            return false;
+        }
+        int forkPoint = branch.get(0).getSerialNumber() - 1;
+        Block forkBlock = chain.get(forkPoint);
+        return forkBlock != null && chain.replaceSuffix(forkPoint, forkBlock, branch);
+    }
+
+    /**
+     * Switch to the best branch in the tree, if one beats our chain
+     * @return true if switched
+     */
+    public boolean switchToBest() {
+        List<Block> candidates;
+        synchronized (this) {
+            candidates = new ArrayList<>(blocks.values());
+        }
+        // longest first, on equal length smaller puzzle first - the fork choice order
+        candidates.sort((a, b) -> a.getSerialNumber() != b.getSerialNumber()
+                ? Integer.compare(b.getSerialNumber(), a.getSerialNumber()) : a.comparePuzzle(b));
+        for (Block tip : candidates) {
+            if (!chain.isBetter(tip.getSerialNumber() + 1, tip)) {
+                return false;  // sorted - nothing after it wins either
+            }
+            if (switchTo(tip.getSigPrefix())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void tipChanged(Block newTip) {
+    }
+
+    @Override
+    public synchronized void blockAppended(Block b) {
+        blocks.remove(b.getSigPrefix());
+    }
+
+    @Override
+    public synchronized void blockRemoved(Block b) {
+        blocks.put(b.getSigPrefix(), b.clone());  // b is a reused view
+    }
+}
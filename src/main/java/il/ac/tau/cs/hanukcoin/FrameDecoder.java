@@ -0,0 +1,220 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Resumable decoder of one cmd=1/cmd=2 message from ByteBuffer fragments - for non-blocking sockets.
+ * Same format as ShowChain3.ClientConnection.parseMessage():
+ *   int cmd, int BEEF_BEEF, int nodesCount, nodes, int DEAD_DEAD, int blocksCount, blocks
+ *   node: byte nameLen, name, byte hostLen, host, short port, int lastSeenTS
+ * feed() takes whatever bytes arrived - any split, even one byte at a time - and keeps its place in a state
+ * machine. Bytes are copied once, straight into the Block or the name/host scratch; nothing waits for a whole
+ * message in a buffer. A 4 byte field split between fragments is collected in an int.
+ */
+public class FrameDecoder {
+    static final int MAX_COUNT = 1 << 20;  // limit on nodes and blocks counts - far more than a real chain, 36MB of blocks
+
+    /**
+     * A complete message
+     */
+    public static class Frame {
+        public int cmd;
+        public ArrayList<ShowChain3.NodeInfo> nodes = new ArrayList<>();
+        public ArrayList<Block> blocks = new ArrayList<>();
+    }
+
+    private enum State {CMD, BEEF, NODES_COUNT, NAME_LEN, NAME, HOST_LEN, HOST, PORT, LAST_SEEN, DEAD, BLOCKS_COUNT, BLOCK}
+
+    private State state = State.CMD;
+    private Frame frame = new Frame();
+    private int remaining;         // nodes or blocks left to read
+    // field being collected
+    private int value = 0;
+    private int valueBytes = 0;
+    private final byte[] str = new byte[255];
+    private int strLen;
+    private int strPos;
+    private ShowChain3.NodeInfo node;
+    private Block block;
+    private int blockPos;
+
+    /**
+     * Consume bytes from buf until a message is complete or buf is empty
+     * @param buf - in read mode. On return its position is after the consumed bytes -
+     *   bytes of the next message (if any) are left in it
+     * @return the message OR null if more bytes are needed
+     * @throws IOException on bad magic or count - the stream cannot be resynchronized, close the connection
+     */
+    public Frame feed(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            switch (state) {
+                case CMD:
+                    if (readInt(buf)) {
+                        frame.cmd = value;
+                        state = State.BEEF;
+                    }
+                    break;
+                case BEEF:
+                    if (readInt(buf)) {
+                        expect(value, ShowChain3.BEEF_BEEF, "Bad message no BeefBeef");
+                        state = State.NODES_COUNT;
+                    }
+                    break;
+                case NODES_COUNT:
+                    if (readInt(buf)) {
+                        remaining = count(value);
+                        frame.nodes.ensureCapacity(Math.min(remaining, 1024));
+                        state = remaining > 0 ? State.NAME_LEN : State.DEAD;
+                    }
+                    break;
+                case NAME_LEN:
+                    node = new ShowChain3.NodeInfo();
+                    startString(buf.get());
+                    state = State.NAME;
+                    break;
+                case NAME:
+                    if (readString(buf)) {
+                        node.name = new String(str, 0, strLen, StandardCharsets.UTF_8);
+                        state = State.HOST_LEN;
+                    }
+                    break;
+                case HOST_LEN:
+                    startString(buf.get());
+                    state = State.HOST;
+                    break;
+                case HOST:
+                    if (readString(buf)) {
+                        node.host = new String(str, 0, strLen, StandardCharsets.UTF_8);
+                        state = State.PORT;
+                    }
+                    break;
+                case PORT:
+                    if (readBytes(buf, 2)) {
+                        node.port = value & 0xFFFF;  // unsigned - see QUIZ in NodeInfo.readFrom()
+                        state = State.LAST_SEEN;
+                    }
+                    break;
+                case LAST_SEEN:
+                    if (readInt(buf)) {
+                        node.lastSeenTS = value;
+                        frame.nodes.add(node);
+                        node = null;
+                        state = --remaining > 0 ? State.NAME_LEN : State.DEAD;
+                    }
+                    break;
+                case DEAD:
+                    if (readInt(buf)) {
+                        expect(value, ShowChain3.DEAD_DEAD, "Bad message no DeadDead");
+                        state = State.BLOCKS_COUNT;
+                    }
+                    break;
+                case BLOCKS_COUNT:
+                    if (readInt(buf)) {
+                        remaining = count(value);
+                        frame.blocks.ensureCapacity(Math.min(remaining, 1024));
+                        if (remaining == 0) {
+                            return done();
+                        }
+                        startBlock();
+                    }
+                    break;
+                case BLOCK:
+                    int n = Math.min(Block.BLOCK_SZ - blockPos, buf.remaining());
+                    buf.get(block.getBytes(), blockPos, n);
+                    blockPos += n;
+                    if (blockPos == Block.BLOCK_SZ) {
+                        frame.blocks.add(block);
+                        if (--remaining == 0) {
+                            return done();
+                        }
+                        startBlock();
+                    }
+                    break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if in the middle of a message
+     */
+    public boolean isPartial() {
+        return state != State.CMD || valueBytes > 0;
+    }
+
+    /**
+     * Forget a partial message
+     */
+    public void reset() {
+        state = State.CMD;
+        frame = new Frame();
+        value = 0;
+        valueBytes = 0;
+        node = null;
+        block = null;
+    }
+
+    private Frame done() {
+        Frame f = frame;
+        reset();
+        return f;
+    }
+
+    private static void expect(int actual, int expected, String message) throws IOException {
+        if (actual != expected) {
+            throw new IOException(message);
+        }
+    }
+
+    private static int count(int value) throws IOException {
+        if (value < 0 || value > MAX_COUNT) {
+            throw new IOException("Bad message count " + value);
+        }
+        return value;
+    }
+
+    private boolean readInt(ByteBuffer buf) {
+        return readBytes(buf, 4);
+    }
+
+    /**
+     * Collect a big-endian number of size bytes into value
+     * @return true when complete
+     */
+    private boolean readBytes(ByteBuffer buf, int size) {
+        if (valueBytes == 0 && buf.remaining() >= size) {
+            value = size == 4 ? buf.getInt() : buf.getShort();  // fast path - not split
+            return true;
+        }
+        while (valueBytes < size && buf.hasRemaining()) {
+            value = (value << 8) | (buf.get() & 0xFF);
+            valueBytes++;
+        }
+        if (valueBytes < size) {
+            return false;
+        }
+        valueBytes = 0;
+        return true;
+    }
+
+    private void startString(byte len) {
+        strLen = len & 0xFF;
+        strPos = 0;
+    }
+
+    private boolean readString(ByteBuffer buf) {
+        int n = Math.min(strLen - strPos, buf.remaining());
+        buf.get(str, strPos, n);
+        strPos += n;
+        return strPos == strLen;
+    }
+
+    private void startBlock() {
+        block = Block.createEmpty();
+        blockPos = 0;
+        state = State.BLOCK;
+    }
+}
@@ -1,5 +1,6 @@
 package il.ac.tau.cs.hanukcoin;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -206,24 +207,22 @@ public class HanukCoinUtils {
     }
 
     public static Block mineCoinAttemptInternal(Block newBlock, int attemptsCount) {
-        Random rand = new Random();
-        for (int attempt= 0; attempt < attemptsCount; attempt++) {
-            long puzzle = rand.nextLong();
-            newBlock.setLongPuzzle(puzzle);
-            Block.BlockError result = newBlock.checkSignature();
-            if (result != Block.BlockError.SIG_NO_ZEROS) {
-                // if enough zeros - we got error because of other reason - e.g. sig field not set yet
-                byte[] sig = newBlock.calcSignature();
-                newBlock.setSignaturePart(sig);
-                // recheck block
-                result = newBlock.checkSignature();
-                if (result != Block.BlockError.OK) {
-                    return null; //failed
-                }
-                return newBlock;
-            }
+        // scan sequentially from a random start - no repeated puzzles and no RNG call per attempt
+        long startPuzzle = new Random().nextLong();
+        MiningBackend backend = MiningBackend.create();
+        backend.reset(newBlock.getBytes());  // serial, wallet and prevSig do not change while mining
+        int nZeros = numberOfZerosForPuzzle(newBlock.getSerialNumber());
+        int found = backend.search(startPuzzle, attemptsCount, nZeros);
+        if (found < 0) {
+            return null;
         }
-        return null;
+        newBlock.setLongPuzzle(startPuzzle + found);
+        newBlock.setSignaturePart(newBlock.calcSignature());
+        // recheck block
+        if (newBlock.checkSignature() != Block.BlockError.OK) {
+            return null; //failed
+        }
+        return newBlock;
     }
 
     public static void main(String[] args) {
@@ -238,12 +237,18 @@ public class HanukCoinUtils {
         int wallet1 = HanukCoinUtils.walletCode("TEST1");
         int wallet2 = HanukCoinUtils.walletCode("TEST2");
 
+        ParallelMiner miner = new ParallelMiner();
+        miner.setCheckpointFile(Paths.get("mining.checkpoint"));
         for(int i = 0; i < numCoins; i++) {
             long t1 = System.nanoTime();
             Block newBlock = null;
             Block prevBlock = chain.get(i);
-            while (newBlock == null) {
-                newBlock = mineCoinAttempt(wallet1, prevBlock, 10000000);
+            try {
+                while (newBlock == null) {
+                    newBlock = miner.mine(wallet1, prevBlock, 10000000);
+                }
+            } catch (InterruptedException e) {
+                return;
             }
             int tmp = wallet1;
             wallet1 = wallet2;
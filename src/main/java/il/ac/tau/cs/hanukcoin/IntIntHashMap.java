@@ -0,0 +1,155 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * int -> int hash map without boxing. Open addressing with linear probing in two parallel arrays.
+ * Any int is a valid key - key 0 is kept aside since 0 marks an empty slot.
+ * Not synchronized.
+ */
+public class IntIntHashMap {
+    private static final float MAX_LOAD = 0.5f;
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;    // not counting key 0
+    private boolean hasZeroKey = false;
+    private int zeroValue = 0;
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    /**
+     * @return value of key OR defaultValue if not in map
+     */
+    public int get(int key, int defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] == key ? values[i] : defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : keys[slot(key)] == key;
+    }
+
+    public void put(int key, int value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] != key) {
+            keys[i] = key;
+            size++;
+            if (size > keys.length * MAX_LOAD) {
+                values[i] = value;
+                grow();
+                return;
+            }
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Add delta to value of key (missing key counts as 0)
+     * @return the new value
+     */
+    public int addTo(int key, int delta) {
+        int value = get(key, 0) + delta;
+        put(key, value);
+        return value;
+    }
+
+    public void remove(int key) {
+        if (key == 0) {
+            hasZeroKey = false;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] != key) {
+            return;
+        }
+        // backward shift - move later entries of the probe run into the hole so lookups do not stop early
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            // move j to hole if its home slot is not in (hole, j] - cyclic
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+        size--;
+    }
+
+    /**
+     * Call f(key, value) for every entry - the int result is ignored, IntBinaryOperator just avoids boxing
+     */
+    public void forEach(IntBinaryOperator f) {
+        if (hasZeroKey) {
+            f.applyAsInt(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                f.applyAsInt(keys[i], values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;  // wallet numbers are already hashes, but small test keys are not
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return slot of key, or the empty slot where it would go
+     */
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Mining backend using the JCA MessageDigest MD5 - the original Block.calcSignature() way.
+ * Kept as a reference and for JVMs where the MD5 intrinsic beats Md5Kernel.
+ */
+class JcaMd5Backend implements MiningBackend {
+    private final MessageDigest md;
+    private final byte[] data = new byte[Block.BLOCK_SZ];
+    private final byte[] sig = new byte[16];
+
+    JcaMd5Backend() {
+        try {
+            md = MessageDigest.getInstance("MD5");  // may cause NoSuchAlgorithmException
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Internal error - missing MD5");
+        }
+    }
+
+    @Override
+    public String name() {
+        return "jca";
+    }
+
+    @Override
+    public void reset(byte[] blockData) {
+        System.arraycopy(blockData, 0, data, 0, 16);
+    }
+
+    @Override
+    public int search(long startPuzzle, int count, int nZeros) {
+        try {
+            for (int i = 0; i < count; i++) {
+                long puzzle = startPuzzle + i;
+                HanukCoinUtils.intIntoBytes(data, 16, (int) (puzzle >>> 32));
+                HanukCoinUtils.intIntoBytes(data, 20, (int) puzzle);
+                md.update(data, 0, 24);
+                md.digest(sig, 0, 16);  // digest into our array - no allocation
+                if (HanukCoinUtils.checkSignatureZeros(sig, nZeros)) {
+                    return i;
+                }
+            }
+        } catch (DigestException e) {
+            throw new RuntimeException("Internal error - MD5 digest", e);
+        }
+        return -1;
+    }
+}
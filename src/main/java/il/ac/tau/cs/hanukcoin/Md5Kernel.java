@@ -0,0 +1,253 @@
+package il.ac.tau.cs.hanukcoin;
+
+/**
+ * MD5 specialized for the 24 bytes signed part of a Block.
+ * The input is always 24 bytes so it fits a single MD5 chunk with fixed padding.
+ * Per mining round only the puzzle (message words 4,5) changes - the other words, and the first 4 MD5 steps
+ * that use only them, are computed once in reset().
+ * The digest is kept in 4 int fields (A,B,C,D as in RFC 1321) - nothing is allocated per attempt.
+ * checkPuzzle() rejects most candidates from D (signature bytes 12..15) before finishing the last 2 steps.
+ * This is also the scalar MiningBackend.
+ */
+public class Md5Kernel implements MiningBackend {
+    private static final int[] K = {
+            0xd76aa478, 0xe8c7b756, 0x242070db, 0xc1bdceee, 0xf57c0faf, 0x4787c62a, 0xa8304613, 0xfd469501,
+            0x698098d8, 0x8b44f7af, 0xffff5bb1, 0x895cd7be, 0x6b901122, 0xfd987193, 0xa679438e, 0x49b40821,
+            0xf61e2562, 0xc040b340, 0x265e5a51, 0xe9b6c7aa, 0xd62f105d, 0x02441453, 0xd8a1e681, 0xe7d3fbc8,
+            0x21e1cde6, 0xc33707d6, 0xf4d50d87, 0x455a14ed, 0xa9e3e905, 0xfcefa3f8, 0x676f02d9, 0x8d2a4c8a,
+            0xfffa3942, 0x8771f681, 0x6d9d6122, 0xfde5380c, 0xa4beea44, 0x4bdecfa9, 0xf6bb4b60, 0xbebfbc70,
+            0x289b7ec6, 0xeaa127fa, 0xd4ef3085, 0x04881d05, 0xd9d4d039, 0xe6db99e5, 0x1fa27cf8, 0xc4ac5665,
+            0xf4292244, 0x432aff97, 0xab9423a7, 0xfc93a039, 0x655b59c3, 0x8f0ccc92, 0xffeff47d, 0x85845dd1,
+            0x6fa87e4f, 0xfe2ce6e0, 0xa3014314, 0x4e0811a1, 0xf7537e82, 0xbd3af235, 0x2ad7d2bb, 0xeb86d391,
+    };
+    // message word used by each step
+    private static final int[] G = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            1, 6, 11, 0, 5, 10, 15, 4, 9, 14, 3, 8, 13, 2, 7, 12,
+            5, 8, 11, 14, 1, 4, 7, 10, 13, 0, 3, 6, 9, 12, 15, 2,
+            0, 7, 14, 5, 12, 3, 10, 1, 8, 15, 6, 13, 4, 11, 2, 9,
+    };
+    private static final int INIT_A = 0x67452301;
+    private static final int INIT_B = 0xefcdab89;
+    private static final int INIT_C = 0x98badcfe;
+    private static final int INIT_D = 0x10325476;
+
+    // message words of the single MD5 chunk
+    private final int[] m = new int[16];
+    // K[i] + M[G[i]] with the puzzle words (4,5) taken as zero
+    private final int[] km = new int[64];
+    // state after step 3 - steps 0..3 use only serial, wallet and prevSig
+    private int a3, b3, c3, d3;
+    // result of last digest
+    private int stateA, stateB, stateC, stateD;
+
+    /**
+     * Load the constant part of the block - serial number, wallet and prevSig (bytes 0..15).
+     * Must be called whenever one of these changes.
+     * @param blockData - 36 bytes of a block (only first 16 are used)
+     */
+    @Override
+    public void reset(byte[] blockData) {
+        int[] m = this.m;
+        for (int i = 0; i < 4; i++) {
+            m[i] = leInt(blockData, i * 4);
+        }
+        m[6] = 0x80;  // padding - single 1 bit after 24 bytes of message
+        m[14] = 24 * 8;  // message length in bits
+        for (int i = 0; i < 64; i++) {
+            km[i] = K[i] + m[G[i]];
+        }
+        int a = INIT_A, b = INIT_B, c = INIT_C, d = INIT_D;
+        a = ff(a, b, c, d, km[0], 7);
+        d = ff(d, a, b, c, km[1], 12);
+        c = ff(c, d, a, b, km[2], 17);
+        b = ff(b, c, d, a, km[3], 22);
+        a3 = a;
+        b3 = b;
+        c3 = c;
+        d3 = d;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public int search(long startPuzzle, int count, int nZeros) {
+        for (int i = 0; i < count; i++) {
+            if (checkPuzzle(startPuzzle + i, nZeros)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy K[i] + M[G[i]] of the current round - used by other backends running the same steps
+     * @param dst - 64 ints
+     */
+    void copyRoundState(int[] dst) {
+        System.arraycopy(km, 0, dst, 0, 64);
+    }
+
+    /**
+     * @param i - 0..3 for A,B,C,D
+     * @return state after the first 4 steps of the current round
+     */
+    int getState3(int i) {
+        return i == 0 ? a3 : i == 1 ? b3 : i == 2 ? c3 : d3;
+    }
+
+    /**
+     * Try one puzzle value.
+     * @param puzzle - 64 bit puzzle as written by Block.setLongPuzzle()
+     * @param nZeros - required number of zero bits at end of signature
+     * @return true if signature has enough zeros. In this case the digest is available through writeSignature()
+     */
+    public boolean checkPuzzle(long puzzle, int nZeros) {
+        // puzzle is written big-endian into bytes 16..23 - MD5 reads words little-endian
+        int m4 = Integer.reverseBytes((int) (puzzle >>> 32));
+        int m5 = Integer.reverseBytes((int) puzzle);
+        final int[] km = this.km;
+        int a = a3, b = b3, c = c3, d = d3;
+        a = ff(a, b, c, d, km[4] + m4, 7);
+        d = ff(d, a, b, c, km[5] + m5, 12);
+        c = ff(c, d, a, b, km[6], 17);
+        b = ff(b, c, d, a, km[7], 22);
+        a = ff(a, b, c, d, km[8], 7);
+        d = ff(d, a, b, c, km[9], 12);
+        c = ff(c, d, a, b, km[10], 17);
+        b = ff(b, c, d, a, km[11], 22);
+        a = ff(a, b, c, d, km[12], 7);
+        d = ff(d, a, b, c, km[13], 12);
+        c = ff(c, d, a, b, km[14], 17);
+        b = ff(b, c, d, a, km[15], 22);
+        a = gg(a, b, c, d, km[16], 5);
+        d = gg(d, a, b, c, km[17], 9);
+        c = gg(c, d, a, b, km[18], 14);
+        b = gg(b, c, d, a, km[19], 20);
+        a = gg(a, b, c, d, km[20] + m5, 5);
+        d = gg(d, a, b, c, km[21], 9);
+        c = gg(c, d, a, b, km[22], 14);
+        b = gg(b, c, d, a, km[23] + m4, 20);
+        a = gg(a, b, c, d, km[24], 5);
+        d = gg(d, a, b, c, km[25], 9);
+        c = gg(c, d, a, b, km[26], 14);
+        b = gg(b, c, d, a, km[27], 20);
+        a = gg(a, b, c, d, km[28], 5);
+        d = gg(d, a, b, c, km[29], 9);
+        c = gg(c, d, a, b, km[30], 14);
+        b = gg(b, c, d, a, km[31], 20);
+        a = hh(a, b, c, d, km[32] + m5, 4);
+        d = hh(d, a, b, c, km[33], 11);
+        c = hh(c, d, a, b, km[34], 16);
+        b = hh(b, c, d, a, km[35], 23);
+        a = hh(a, b, c, d, km[36], 4);
+        d = hh(d, a, b, c, km[37] + m4, 11);
+        c = hh(c, d, a, b, km[38], 16);
+        b = hh(b, c, d, a, km[39], 23);
+        a = hh(a, b, c, d, km[40], 4);
+        d = hh(d, a, b, c, km[41], 11);
+        c = hh(c, d, a, b, km[42], 16);
+        b = hh(b, c, d, a, km[43], 23);
+        a = hh(a, b, c, d, km[44], 4);
+        d = hh(d, a, b, c, km[45], 11);
+        c = hh(c, d, a, b, km[46], 16);
+        b = hh(b, c, d, a, km[47], 23);
+        a = ii(a, b, c, d, km[48], 6);
+        d = ii(d, a, b, c, km[49], 10);
+        c = ii(c, d, a, b, km[50], 15);
+        b = ii(b, c, d, a, km[51] + m5, 21);
+        a = ii(a, b, c, d, km[52], 6);
+        d = ii(d, a, b, c, km[53], 10);
+        c = ii(c, d, a, b, km[54], 15);
+        b = ii(b, c, d, a, km[55], 21);
+        a = ii(a, b, c, d, km[56], 6);
+        d = ii(d, a, b, c, km[57], 10);
+        c = ii(c, d, a, b, km[58], 15);
+        b = ii(b, c, d, a, km[59], 21);
+        a = ii(a, b, c, d, km[60] + m4, 6);
+        d = ii(d, a, b, c, km[61], 10);
+        // d now holds the final D (minus init) - signature bytes 12..15
+        int finalD = d + INIT_D;
+        long mask = zerosMask(nZeros);
+        if ((Integer.reverseBytes(finalD) & (int) mask) != 0) {
+            return false;
+        }
+        c = ii(c, d, a, b, km[62], 15);
+        b = ii(b, c, d, a, km[63], 21);
+        stateA = a + INIT_A;
+        stateB = b + INIT_B;
+        stateC = c + INIT_C;
+        stateD = finalD;
+        return (Integer.reverseBytes(stateC) & (int) (mask >>> 32)) == 0;
+    }
+
+    /**
+     * Calc full MD5 of the first 24 bytes of blockData.
+     * @param blockData - 36 bytes of a block
+     */
+    public void digest(byte[] blockData) {
+        reset(blockData);
+        long puzzle = ((long) HanukCoinUtils.intFromBytes(blockData, 16) << 32)
+                | (HanukCoinUtils.intFromBytes(blockData, 20) & 0xFFFFFFFFL);
+        checkPuzzle(puzzle, 0);
+    }
+
+    /**
+     * Check if the last digest has nZeros zero bits at its end - same rule as HanukCoinUtils.checkSignatureZeros()
+     */
+    public boolean hasZeros(int nZeros) {
+        long mask = zerosMask(nZeros);
+        return (Integer.reverseBytes(stateD) & (int) mask) == 0
+                && (Integer.reverseBytes(stateC) & (int) (mask >>> 32)) == 0;
+    }
+
+    /**
+     * Compare the last digest to the first 12 bytes of a signature
+     * @param sig - array holding signature
+     * @param offset - where signature starts in sig
+     * @return true if equal
+     */
+    public boolean signatureEquals(byte[] sig, int offset) {
+        return leInt(sig, offset) == stateA && leInt(sig, offset + 4) == stateB && leInt(sig, offset + 8) == stateC;
+    }
+
+    /**
+     * Write the first len bytes of last digest into dst[offset]
+     */
+    public void writeSignature(byte[] dst, int offset, int len) {
+        for (int i = 0; i < len; i++) {
+            int word = i < 4 ? stateA : i < 8 ? stateB : i < 12 ? stateC : stateD;
+            dst[offset + i] = (byte) (word >>> ((i & 3) * 8));
+        }
+    }
+
+    /**
+     * mask of nZeros low bits on the big-endian long made of signature bytes 8..15
+     */
+    private static long zerosMask(int nZeros) {
+        return nZeros >= 64 ? -1L : (1L << nZeros) - 1;
+    }
+
+    private static int leInt(byte[] data, int offset) {
+        return Integer.reverseBytes(HanukCoinUtils.intFromBytes(data, offset));
+    }
+
+    private static int ff(int a, int b, int c, int d, int x, int s) {
+        return b + Integer.rotateLeft(a + ((b & c) | (~b & d)) + x, s);
+    }
+
+    private static int gg(int a, int b, int c, int d, int x, int s) {
+        return b + Integer.rotateLeft(a + ((b & d) | (c & ~d)) + x, s);
+    }
+
+    private static int hh(int a, int b, int c, int d, int x, int s) {
+        return b + Integer.rotateLeft(a + (b ^ c ^ d) + x, s);
+    }
+
+    private static int ii(int a, int b, int c, int d, int x, int s) {
+        return b + Integer.rotateLeft(a + (c ^ (b | ~d)) + x, s);
+    }
+}
@@ -0,0 +1,147 @@
+package il.ac.tau.cs.hanukcoin;
+
+/**
+ * Something that can scan a range of puzzles for a block.
+ * A backend keeps per-block state so each mining thread needs its own instance.
+ */
+public interface MiningBackend {
+    /**
+     * Load serial number, wallet and prevSig of the block to mine.
+     * @param blockData - 36 bytes of a block (puzzle and signature ignored)
+     */
+    void reset(byte[] blockData);
+
+    /**
+     * Scan puzzles startPuzzle .. startPuzzle + count - 1
+     * @param startPuzzle - first puzzle to try
+     * @param count - number of puzzles to try
+     * @param nZeros - required number of zero bits at end of signature
+     * @return index (0..count-1) of the first puzzle that solves the block OR -1 if none
+     */
+    int search(long startPuzzle, int count, int nZeros);
+
+    String name();
+
+    /**
+     * Create the fastest backend available on this JVM/CPU.
+     * On first use every available backend (see Holder) is checked against the scalar kernel and timed
+     * for a short while - the fastest is used from then on.
+     * Set system property hanukcoin.md5 to scalar, vector, native or jca to force a backend.
+     * @return new backend
+     */
+    static MiningBackend create() {
+        MiningBackend backend = newBackend(Holder.BEST);
+        return backend != null ? backend : new Md5Kernel();
+    }
+
+    /**
+     * @param name - scalar, vector, native or jca
+     * @return new backend OR null if not available on this JVM
+     */
+    static MiningBackend newBackend(String name) {
+        switch (name) {
+            case "scalar":
+                return new Md5Kernel();
+            case "jca":
+                return new JcaMd5Backend();
+            case "vector":
+                return newByClassName("il.ac.tau.cs.hanukcoin.VectorMd5Backend");
+            case "native":
+                return newByClassName("il.ac.tau.cs.hanukcoin.NativeMd5Backend");
+            default:
+                return null;
+        }
+    }
+
+    private static MiningBackend newByClassName(String className) {
+        try {
+            // by name - so this interface loads even without jdk.incubator.vector or --enable-preview
+            Class<?> c = Class.forName(className);
+            return (MiningBackend) c.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Pick the backend once per JVM.
+     */
+    class Holder {
+        static final String[] NAMES = {"scalar", "vector", "native", "jca"};
+        static final long WARMUP_NANOS = 100000000;  // enough for the JIT to compile the vector backend
+        static final long BENCH_NANOS = 50000000;
+        static final String BEST = pickBest();
+
+        private static String pickBest() {
+            String forced = System.getProperty("hanukcoin.md5");
+            if (forced != null && selfTest(newBackend(forced))) {
+                return forced;
+            }
+            String best = "scalar";
+            double bestRate = 0;
+            for (String name : NAMES) {
+                MiningBackend backend = newBackend(name);
+                if (!selfTest(backend)) {
+                    continue;
+                }
+                double rate = benchmark(backend);
+                if (rate > bestRate) {
+                    bestRate = rate;
+                    best = name;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Check backend finds the same puzzles as the scalar kernel around the genesis puzzle.
+         */
+        static boolean selfTest(MiningBackend backend) {
+            if (backend == null) {
+                return false;
+            }
+            Block genesis = HanukCoinUtils.createBlock0forTestStage();
+            byte[] data = genesis.getBytes();
+            long puzzle = ((long) HanukCoinUtils.intFromBytes(data, 16) << 32) | (HanukCoinUtils.intFromBytes(data, 20) & 0xFFFFFFFFL);
+            int nZeros = HanukCoinUtils.numberOfZerosForPuzzle(genesis.getSerialNumber());
+            MiningBackend scalar = new Md5Kernel();
+            try {
+                scalar.reset(data);
+                backend.reset(data);
+                for (int shift : new int[]{0, 1, 5, 1001}) {
+                    long start = puzzle - shift;
+                    int expected = scalar.search(start, 2048, nZeros);
+                    if (expected != shift || backend.search(start, 2048, nZeros) != expected) {
+                        return false;
+                    }
+                }
+            } catch (RuntimeException | LinkageError e) {
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return puzzles per nano-second, measured for BENCH_NANOS after WARMUP_NANOS
+         */
+        static double benchmark(MiningBackend backend) {
+            Block genesis = HanukCoinUtils.createBlock0forTestStage();
+            backend.reset(genesis.getBytes());
+            timedSearch(backend, WARMUP_NANOS);
+            long t1 = System.nanoTime();
+            long count = timedSearch(backend, BENCH_NANOS);
+            return (double) count / (System.nanoTime() - t1);
+        }
+
+        private static long timedSearch(MiningBackend backend, long nanos) {
+            final int batch = 4096;
+            long count = 0;
+            long t1 = System.nanoTime();
+            while (System.nanoTime() - t1 < nanos) {
+                backend.search(count, batch, 64);  // 64 zeros - never found
+                count += batch;
+            }
+            return count;
+        }
+    }
+}
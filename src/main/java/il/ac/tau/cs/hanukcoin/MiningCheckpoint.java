@@ -0,0 +1,151 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Progress of a deterministic puzzle search for one block.
+ * The unsigned 64 bit puzzle space is split into workersCount disjoint ranges. Worker i scans
+ * i * stride, i * stride + 1, ... and its progress is the number of puzzles it already tried.
+ * The search is keyed by (serial, wallet, prevSig) - the fields that define the block being mined.
+ * Progress can be saved to a file so a restarted node continues where it stopped.
+ *
+ * File format (big-endian):
+ *   int magic, int serial, int wallet, 8 bytes prevSig, int workersCount, workersCount * long progress
+ */
+public class MiningCheckpoint {
+    private static final int MAGIC = 0x4d494e45;  // "MINE"
+
+    private final int serialNumber;
+    private final int walletNumber;
+    private final byte[] prevSig8;
+    private final int workersCount;
+    private final long stride;
+    private final AtomicLongArray progress;
+
+    private MiningCheckpoint(int serialNumber, int walletNumber, byte[] prevSig8, int workersCount) {
+        this.serialNumber = serialNumber;
+        this.walletNumber = walletNumber;
+        this.prevSig8 = prevSig8;
+        this.workersCount = workersCount;
+        this.stride = Long.divideUnsigned(-1L, workersCount);
+        this.progress = new AtomicLongArray(workersCount);
+    }
+
+    /**
+     * Start a new search for a block
+     * @param template - block to mine (serial, wallet and prevSig are used)
+     * @param workersCount - number of disjoint ranges
+     * @return checkpoint with zero progress
+     */
+    public static MiningCheckpoint create(Block template, int workersCount) {
+        byte[] prevSig = Arrays.copyOfRange(template.getBytes(), 8, 16);
+        return new MiningCheckpoint(template.getSerialNumber(), template.getWalletNumber(), prevSig, workersCount);
+    }
+
+    /**
+     * Load a saved search if it is for the same block and the same number of workers, otherwise start a new one.
+     * @param file - saved checkpoint. May not exist
+     * @param template - block to mine
+     * @param workersCount - number of disjoint ranges
+     * @return checkpoint
+     */
+    public static MiningCheckpoint load(Path file, Block template, int workersCount) {
+        MiningCheckpoint fresh = create(template, workersCount);
+        if (file == null || !Files.exists(file)) {
+            return fresh;
+        }
+        try (DataInputStream dis = new DataInputStream(Files.newInputStream(file))) {
+            if (dis.readInt() != MAGIC) {
+                return fresh;
+            }
+            int serial = dis.readInt();
+            int wallet = dis.readInt();
+            byte[] prevSig = new byte[8];
+            dis.readFully(prevSig);
+            int workers = dis.readInt();
+            if (!fresh.isFor(serial, wallet, prevSig) || workers != workersCount) {
+                return fresh;  // a checkpoint of another block - start over
+            }
+            for (int i = 0; i < workers; i++) {
+                fresh.progress.set(i, dis.readLong());
+            }
+            return fresh;
+        } catch (IOException e) {
+            return fresh;  // corrupt checkpoint - only costs re-scanning
+        }
+    }
+
+    /**
+     * Write progress to file. Written to a temp file and renamed so a crash never leaves a half written checkpoint.
+     * @param file - where to save
+     */
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(Files.newOutputStream(tmp))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(serialNumber);
+            dos.writeInt(walletNumber);
+            dos.write(prevSig8);
+            dos.writeInt(workersCount);
+            for (int i = 0; i < workersCount; i++) {
+                dos.writeLong(progress.get(i));
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return true if this checkpoint is the search for this block
+     */
+    public boolean isFor(Block template) {
+        return isFor(template.getSerialNumber(), template.getWalletNumber(),
+                Arrays.copyOfRange(template.getBytes(), 8, 16));
+    }
+
+    private boolean isFor(int serial, int wallet, byte[] prevSig) {
+        return serial == serialNumber && wallet == walletNumber && Arrays.equals(prevSig, prevSig8);
+    }
+
+    public int getWorkersCount() {
+        return workersCount;
+    }
+
+    /**
+     * @return next puzzle worker should try
+     */
+    public long nextPuzzle(int worker) {
+        return worker * stride + progress.get(worker);
+    }
+
+    /**
+     * @return number of puzzles worker did not try yet in its range
+     */
+    public long remaining(int worker) {
+        return stride - progress.get(worker);
+    }
+
+    /**
+     * Record that worker tried count more puzzles. Only worker itself calls this.
+     */
+    public void advance(int worker, long count) {
+        progress.lazySet(worker, progress.get(worker) + count);
+    }
+
+    /**
+     * @return total number of puzzles tried for this block
+     */
+    public long totalProgress() {
+        long sum = 0;
+        for (int i = 0; i < workersCount; i++) {
+            sum += progress.get(i);
+        }
+        return sum;
+    }
+}
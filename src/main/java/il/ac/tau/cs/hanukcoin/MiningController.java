@@ -0,0 +1,118 @@
+package il.ac.tau.cs.hanukcoin;
+
+/**
+ * Keep mining on top of the current chain tip.
+ * The controller listens to BlockChain tip changes. When the tip changes under the miner, the current round is
+ * aborted (within one miner batch) and mining restarts on the new tip.
+ * While our own wallet holds the tip the controller pauses - checkValidNext() rejects SAME_WALLET_PREV.
+ * Attempts done on a tip that changed before we could append our block are counted as stale work.
+ */
+public class MiningController implements BlockChain.ChainListener {
+    static final long ATTEMPTS_PER_ROUND = 10000000;
+
+    private final BlockChain chain;
+    private final ParallelMiner miner;
+    private final int myWalletNum;
+    private final Object tipLock = new Object();
+    private Thread thread = null;
+    private volatile boolean running = false;
+    private volatile long attemptsPerRound = ATTEMPTS_PER_ROUND;
+    // attempts counters - only written by the mining thread
+    private volatile long totalAttempts = 0;
+    private volatile long staleAttempts = 0;
+    private volatile int blocksMined = 0;
+
+    public MiningController(BlockChain chain, ParallelMiner miner, int myWalletNum) {
+        this.chain = chain;
+        this.miner = miner;
+        this.myWalletNum = myWalletNum;
+    }
+
+    public void start() {
+        running = true;
+        chain.addListener(this);
+        thread = new Thread(this::miningLoop, "mining-controller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        chain.removeListener(this);
+        miner.abort();
+        synchronized (tipLock) {
+            tipLock.notifyAll();
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public void tipChanged(Block newTip) {
+        // work on the old tip is now useless - stop it. The mining loop picks up the new tip.
+        // newTip is not remembered - tipChanged() calls of concurrent changes may arrive out of order
+        miner.abort();
+        synchronized (tipLock) {
+            tipLock.notifyAll();
+        }
+    }
+
+    /**
+     * @param attemptsPerRound - attempts per miner thread before looking again at the chain tip
+     */
+    public void setAttemptsPerRound(long attemptsPerRound) {
+        this.attemptsPerRound = attemptsPerRound;
+    }
+
+    public int getBlocksMined() {
+        return blocksMined;
+    }
+
+    public long getTotalAttempts() {
+        return totalAttempts;
+    }
+
+    /**
+     * @return part of the attempts (0..1) spent on a tip that changed before our block could be added
+     */
+    public double getStaleWorkRatio() {
+        long total = totalAttempts;
+        return total == 0 ? 0.0 : (double) staleAttempts / total;
+    }
+
+    private void miningLoop() {
+        try {
+            while (running) {
+                long tipVersion = chain.getTipVersion();  // before getTip() - a change in between stops the round
+                Block tip = chain.getTip();
+                if (tip.getWalletNumber() == myWalletNum) {
+                    waitForTipChange(tip);
+                    continue;
+                }
+                long attemptsBefore = miner.getAttemptsCount();
+                // stop condition covers a tip change between getTip() and the start of the round.
+                // Polls a volatile version - every worker asks every 64 attempts, so no chain lock here
+                Block newBlock = miner.mine(myWalletNum, tip, attemptsPerRound, () -> chain.getTipVersion() != tipVersion);
+                long attempts = miner.getAttemptsCount() - attemptsBefore;
+                totalAttempts += attempts;
+                if (newBlock != null && chain.append(newBlock) == Block.BlockError.OK) {
+                    blocksMined += 1;
+                } else if (newBlock != null || chain.getTip() != tip) {
+                    // our block came too late, or the round was aborted because of a new tip
+                    staleAttempts += attempts;
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop mining
+        }
+    }
+
+    private void waitForTipChange(Block tip) throws InterruptedException {
+        synchronized (tipLock) {
+            while (running && chain.getTip() == tip) {
+                tipLock.wait();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.Arrays;
+
+/**
+ * Decide how much mining to do between handling network requests.
+ * When mining and TCP handling share one loop, a request that arrives during a mining slice waits for it.
+ * The governor measures each slice (attempts and duration) and the latency of recent requests,
+ * and adjusts attempts per slice and number of miner threads so the p99 request latency stays under budget.
+ * Multiplicative decrease when over budget, slow increase when well under - like TCP congestion control.
+ * Synchronized - requests may be recorded by several reactor threads (see ServerSimpleNonBlocking workers).
+ */
+public class MiningGovernor {
+    static final int LATENCY_SAMPLES = 1024;
+    static final long MIN_ATTEMPTS = 1000;
+    static final long MAX_ATTEMPTS = 100000000;
+    static final long MIN_SLICE_NANOS = 100000;  // 0.1 milli - below that loop overhead dominates
+
+    /**
+     * Current decisions - what the loop should do now and why
+     * @param attemptsPerSlice - attempts per miner thread in next slice
+     * @param minerThreads - number of miner threads to use
+     * @param targetSliceNanos - how long a slice should take
+     * @param lastSliceNanos - how long last slice took
+     * @param p99LatencyNanos - p99 of recent request latencies
+     */
+    public record Decision(long attemptsPerSlice, int minerThreads, long targetSliceNanos,
+                           long lastSliceNanos, long p99LatencyNanos) {
+        @Override
+        public String toString() {
+            return String.format("attempts=%d threads=%d slice=%.2fms (target %.2fms) p99=%.2fms",
+                    attemptsPerSlice, minerThreads, lastSliceNanos / 1e6, targetSliceNanos / 1e6, p99LatencyNanos / 1e6);
+        }
+    }
+
+    private final long latencyBudgetNanos;
+    private final int maxThreads;
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private int latencyNext = 0;  // ring index of the next sample
+    private int latencyFilled = 0;  // valid samples in the ring - saturates at LATENCY_SAMPLES
+    private long targetSliceNanos;
+    private long attemptsPerSlice = MIN_ATTEMPTS;
+    private int minerThreads = 1;
+    private long lastSliceNanos = 0;
+    private long p99LatencyNanos = 0;
+
+    /**
+     * @param latencyBudgetNanos - p99 request latency we want to keep
+     * @param maxThreads - max number of miner threads
+     */
+    public MiningGovernor(long latencyBudgetNanos, int maxThreads) {
+        this.latencyBudgetNanos = latencyBudgetNanos;
+        this.maxThreads = maxThreads;
+        this.targetSliceNanos = Math.max(MIN_SLICE_NANOS, latencyBudgetNanos / 4);
+    }
+
+    /**
+     * Record how long one request took from arrival to response
+     */
+    public synchronized void recordRequestLatency(long nanos) {
+        latencies[latencyNext] = nanos;
+        if (++latencyNext == LATENCY_SAMPLES) {
+            latencyNext = 0;
+        }
+        if (latencyFilled < LATENCY_SAMPLES) {
+            latencyFilled++;
+        }
+    }
+
+    /**
+     * Record a mining slice and adjust the decisions for the next one
+     * @param attempts - attempts per thread done in the slice
+     * @param durationNanos - how long the slice took
+     */
+    public synchronized void recordSlice(long attempts, long durationNanos) {
+        lastSliceNanos = durationNanos;
+        p99LatencyNanos = latencyPercentile(99);
+        if (p99LatencyNanos > latencyBudgetNanos) {
+            targetSliceNanos = Math.max(MIN_SLICE_NANOS, targetSliceNanos / 2);
+            if (minerThreads > 1) {
+                minerThreads--;  // leave a core to the network loop
+            }
+            latencyNext = 0;  // measure the new decision - not requests that waited for the old one
+            latencyFilled = 0;
+        } else if (p99LatencyNanos < latencyBudgetNanos / 2) {
+            targetSliceNanos = Math.min(latencyBudgetNanos, targetSliceNanos + targetSliceNanos / 4);
+            if (minerThreads < maxThreads) {
+                minerThreads++;
+            }
+        }
+        if (attempts > 0 && durationNanos > 0) {
+            double attemptsPerNano = (double) attempts / durationNanos;
+            long next = (long) (attemptsPerNano * targetSliceNanos);
+            attemptsPerSlice = Math.max(MIN_ATTEMPTS, Math.min(MAX_ATTEMPTS, next));
+        }
+    }
+
+    public synchronized long getAttemptsPerSlice() {
+        return attemptsPerSlice;
+    }
+
+    public synchronized int getMinerThreads() {
+        return minerThreads;
+    }
+
+    public synchronized Decision getDecision() {
+        return new Decision(attemptsPerSlice, minerThreads, targetSliceNanos, lastSliceNanos, p99LatencyNanos);
+    }
+
+    /**
+     * @param percent - 0..100
+     * @return latency percentile over the recent samples, 0 if no samples
+     */
+    synchronized long latencyPercentile(int percent) {
+        int n = latencyFilled;
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * n) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
@@ -0,0 +1,191 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Blocks stored back to back in one growable byte region - block i (serial number i) at offset i * BLOCK_SZ.
+ * Compared to ArrayList of Block this saves the per-block object and array headers and keeps the chain
+ * contiguous in memory. The region may be on-heap or off-heap (direct ByteBuffer).
+ * Blocks are read through reusable "views" - a Block object that gets the 36 bytes copied in, no allocation.
+ * Not thread safe - BlockChain synchronizes access.
+ */
+public class PackedChainStore {
+    static final int INITIAL_CAPACITY = 1024;  // in blocks
+
+    private final boolean offHeap;
+    private ByteBuffer region;
+    private int count = 0;
+    // scratch views used by validate() - validation allocates nothing
+    private final Block prevView = Block.createEmpty();
+    private final Block curView = Block.createEmpty();
+
+    public PackedChainStore(int initialCapacity, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.region = allocate(Math.max(1, initialCapacity) * Block.BLOCK_SZ);
+    }
+
+    public PackedChainStore() {
+        this(INITIAL_CAPACITY, false);
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        // ByteBuffer is big-endian by default - same as block fields
+        return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return bytes used by the region (capacity, not only used part)
+     */
+    public int capacityBytes() {
+        return region.capacity();
+    }
+
+    public void append(Block b) {
+        append(b.getBytes(), 0);
+    }
+
+    /**
+     * Append a block given as BLOCK_SZ bytes at src[offset]
+     */
+    public void append(byte[] src, int offset) {
+        ensureCapacity(count + 1);
+        region.put(count * Block.BLOCK_SZ, src, offset, Block.BLOCK_SZ);
+        count++;
+    }
+
+    /**
+     * Append count blocks stored back to back in src - one bulk copy
+     * @param src - buffer holding blocks
+     * @param offset - absolute offset of first block in src
+     * @param blocksCount - number of blocks
+     */
+    public void appendAll(ByteBuffer src, int offset, int blocksCount) {
+        ensureCapacity(count + blocksCount);
+        region.put(count * Block.BLOCK_SZ, src, offset, blocksCount * Block.BLOCK_SZ);
+        count += blocksCount;
+    }
+
+    /**
+     * Drop blocks from the end - e.g. on reorg
+     * @param newSize - number of blocks to keep
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > count) {
+            throw new IndexOutOfBoundsException("truncate to " + newSize + " of " + count);
+        }
+        count = newSize;
+    }
+
+    /**
+     * Read block i into a reusable Block
+     * @param i - block index (serial number)
+     * @param reuse - Block to fill, or null to allocate one
+     * @return the filled block
+     */
+    public Block view(int i, Block reuse) {
+        checkIndex(i);
+        Block b = reuse != null ? reuse : Block.createEmpty();
+        b.loadFrom(region, i * Block.BLOCK_SZ);
+        return b;
+    }
+
+    public int getSerialNumber(int i) {
+        checkIndex(i);
+        return region.getInt(i * Block.BLOCK_SZ);
+    }
+
+    public int getWalletNumber(int i) {
+        checkIndex(i);
+        return region.getInt(i * Block.BLOCK_SZ + 4);
+    }
+
+    /**
+     * @return first 8 bytes of the signature of block i - what the next block has as prevSig
+     */
+    public long getSigPrefix(int i) {
+        checkIndex(i);
+        return region.getLong(i * Block.BLOCK_SZ + 24);
+    }
+
+    /**
+     * @return true if block i has exactly the bytes of b
+     */
+    public boolean blockEquals(int i, Block b) {
+        checkIndex(i);
+        byte[] data = b.getBytes();
+        int base = i * Block.BLOCK_SZ;
+        for (int k = 0; k < Block.BLOCK_SZ; k++) {
+            if (region.get(base + k) != data[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validate blocks from..to-1 - each against its previous one (block 0 is trusted as genesis).
+     * @return index of first bad block, or -1 if all OK
+     */
+    public int validate(int from, int to) {
+        for (int i = Math.max(1, from); i < to; i++) {
+            view(i - 1, prevView);
+            view(i, curView);
+            if (curView.checkValidNext(prevView) != Block.BlockError.OK) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write blocks from..to-1 in wire format (BLOCK_SZ bytes each)
+     */
+    public void writeTo(DataOutputStream dos, int from, int to) throws IOException {
+        if (region.hasArray()) {
+            dos.write(region.array(), region.arrayOffset() + from * Block.BLOCK_SZ, (to - from) * Block.BLOCK_SZ);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(to - from, 256) * Block.BLOCK_SZ];
+        for (int i = from; i < to; ) {
+            int n = Math.min(to - i, chunk.length / Block.BLOCK_SZ);
+            region.get(i * Block.BLOCK_SZ, chunk, 0, n * Block.BLOCK_SZ);
+            dos.write(chunk, 0, n * Block.BLOCK_SZ);
+            i += n;
+        }
+    }
+
+    /**
+     * Copy blocks from..to-1 in wire format into dst at its position - one bulk copy
+     */
+    public void copyTo(ByteBuffer dst, int from, int to) {
+        int len = (to - from) * Block.BLOCK_SZ;
+        dst.put(dst.position(), region, from * Block.BLOCK_SZ, len);
+        dst.position(dst.position() + len);
+    }
+
+    private void ensureCapacity(int blocks) {
+        int needed = blocks * Block.BLOCK_SZ;
+        if (needed <= region.capacity()) {
+            return;
+        }
+        ByteBuffer bigger = allocate(Math.max(needed, region.capacity() * 2));
+        bigger.put(0, region, 0, count * Block.BLOCK_SZ);
+        region = bigger;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("block " + i + " of " + count);
+        }
+    }
+}
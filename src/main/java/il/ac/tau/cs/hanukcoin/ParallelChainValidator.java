@@ -0,0 +1,163 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Validate a block list on all cores.
+ * checkValidNext() has two parts: linkage (serial, wallet and prevSig compared to the previous block) which is
+ * cheap, and the signature (MD5 + zeros) which is expensive but independent per block.
+ * Linkage is checked in one sequential pass over primitive arrays, signatures in parallel chunks on a ForkJoinPool.
+ * The result is the same as running checkValidNext() in order - the first failing index and its BlockError.
+ * With Checkpoints, validateLocal() does not check signatures up to the highest checkpoint block - only linkage.
+ * That is for blocks from our own storage only - validate() checks every signature, see Checkpoints.
+ * audit() checks them all, in the background.
+ */
+public class ParallelChainValidator {
+    static final int CHUNK = 256;  // blocks per fork-join leaf task
+
+    /**
+     * @param index - first bad block, -1 if all OK
+     * @param error - what is wrong with it
+     */
+    public record Result(int index, Block.BlockError error) {
+        public static final Result OK = new Result(-1, Block.BlockError.OK);
+
+        public boolean isOk() {
+            return index < 0;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Checkpoints checkpoints;
+
+    public ParallelChainValidator(ForkJoinPool pool, Checkpoints checkpoints) {
+        this.pool = pool;
+        this.checkpoints = checkpoints;
+    }
+
+    public ParallelChainValidator(ForkJoinPool pool) {
+        this(pool, Checkpoints.NONE);
+    }
+
+    public ParallelChainValidator(Checkpoints checkpoints) {
+        this(ForkJoinPool.commonPool(), checkpoints);
+    }
+
+    public ParallelChainValidator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validate blocks[from..] each against the block before it - all signatures are checked
+     * @param blocks - block list
+     * @param from - first block to validate, at least 1 (blocks[from - 1] is trusted)
+     * @return first failure or Result.OK
+     */
+    public Result validate(List<Block> blocks, int from) {
+        return validate(blocks, from, false);
+    }
+
+    /**
+     * Validate a chain loaded from our own storage - signatures up to the highest checkpoint are not checked.
+     * Never for blocks received from a peer - see Checkpoints.
+     * @return first failure or Result.OK
+     */
+    public Result validateLocal(List<Block> blocks) {
+        return validate(blocks, 1, true);
+    }
+
+    private Result validate(List<Block> blocks, int from, boolean useCheckpoints) {
+        from = Math.max(1, from);
+        int linkFail = checkLinkage(blocks, from);
+        int end = linkFail < 0 ? blocks.size() : linkFail;  // signatures after a broken link do not matter
+        // linked to a checkpoint block - the blocks up to it are the ones the checkpoint vouches for
+        int sigFrom = useCheckpoints ? Math.max(from, checkpoints.highestMatching(blocks) + 1) : from;
+        Result sigResult = end > sigFrom ? pool.invoke(new SignatureTask(blocks, sigFrom, end)) : Result.OK;
+        if (!sigResult.isOk()) {
+            return sigResult;  // before linkFail, if any
+        }
+        if (linkFail >= 0) {
+            return new Result(linkFail, blocks.get(linkFail).checkValidNext(blocks.get(linkFail - 1)));
+        }
+        return Result.OK;
+    }
+
+    public Result validate(List<Block> blocks) {
+        return validate(blocks, 1);
+    }
+
+    /**
+     * Full validation ignoring checkpoints - runs on the pool, so the caller can go on serving and mining.
+     * @param blocks - block list, not changed until the audit is done
+     * @return first failure or Result.OK when done
+     */
+    public CompletableFuture<Result> audit(List<Block> blocks) {
+        return CompletableFuture.supplyAsync(() -> validate(blocks, 1, false), pool);
+    }
+
+    /**
+     * @return index of first block whose serial, wallet or prevSig does not follow the previous block OR -1
+     */
+    static int checkLinkage(List<Block> blocks, int from) {
+        int n = blocks.size() - from + 1;
+        if (n <= 1) {
+            return -1;
+        }
+        // copy fields to flat arrays - the compare loop then runs over primitives only
+        int[] serials = new int[n];
+        int[] wallets = new int[n];
+        long[] prevSigs = new long[n];
+        long[] sigs = new long[n];
+        for (int k = 0; k < n; k++) {
+            byte[] data = blocks.get(from - 1 + k).getBytes();
+            serials[k] = HanukCoinUtils.intFromBytes(data, 0);
+            wallets[k] = HanukCoinUtils.intFromBytes(data, 4);
+            prevSigs[k] = ((long) HanukCoinUtils.intFromBytes(data, 8) << 32) | (HanukCoinUtils.intFromBytes(data, 12) & 0xFFFFFFFFL);
+            sigs[k] = ((long) HanukCoinUtils.intFromBytes(data, 24) << 32) | (HanukCoinUtils.intFromBytes(data, 28) & 0xFFFFFFFFL);
+        }
+        for (int k = 1; k < n; k++) {
+            boolean linked = serials[k] == serials[k - 1] + 1 & wallets[k] != wallets[k - 1] & prevSigs[k] == sigs[k - 1];
+            if (!linked) {
+                return from - 1 + k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check signatures of blocks[from..to-1], return the lowest failing index
+     */
+    static class SignatureTask extends RecursiveTask<Result> {
+        private final List<Block> blocks;
+        private final int from;
+        private final int to;
+
+        SignatureTask(List<Block> blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= CHUNK) {
+                for (int i = from; i < to; i++) {
+                    Block.BlockError error = blocks.get(i).checkSignature();
+                    if (error != Block.BlockError.OK) {
+                        return new Result(i, error);
+                    }
+                }
+                return Result.OK;
+            }
+            int mid = (from + to) >>> 1;
+            SignatureTask right = new SignatureTask(blocks, mid, to);
+            right.fork();
+            Result leftResult = new SignatureTask(blocks, from, mid).compute();
+            Result rightResult = right.join();
+            return leftResult.isOk() ? rightResult : leftResult;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mine new blocks using several threads.
+ * The 64 bit puzzle space is split into N equal parts - each worker thread scans its own part
+ * with its own candidate Block, so nothing is shared on the hot path.
+ * The first worker that solves the puzzle wins and all the other workers stop.
+ * Ranges are scanned sequentially from their start (see MiningCheckpoint) - calling mine() again for the same
+ * block continues where the previous call stopped, and with a checkpoint file also across restarts.
+ */
+public class ParallelMiner {
+    // how many attempts a worker does between looking at the cancel flag. Keep small - cancel within microseconds
+    static final int CANCEL_CHECK_INTERVAL = 64;
+    static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    /**
+     * State of one mining round - one call to mine().
+     * Workers only read "done" on the hot path, it is written once by the winner or by abort().
+     */
+    static class Round {
+        volatile boolean done = false;
+        final AtomicReference<Block> winner = new AtomicReference<>();
+        final BooleanSupplier stopWhen;
+
+        Round(BooleanSupplier stopWhen) {
+            this.stopWhen = stopWhen;
+        }
+
+        boolean shouldStop() {
+            if (!done && stopWhen.getAsBoolean()) {
+                done = true;
+            }
+            return done;
+        }
+    }
+
+    private final int threadsCount;
+    private volatile int activeThreads;
+    private final ExecutorService pool;
+    private final LongAdder attemptsDone = new LongAdder();
+    private volatile Round currentRound = null;
+    private Path checkpointFile = null;
+    private MiningCheckpoint checkpoint = null;
+
+    public ParallelMiner(int threadsCount) {
+        if (threadsCount < 1) {
+            throw new IllegalArgumentException("threadsCount must be positive");
+        }
+        this.threadsCount = threadsCount;
+        this.activeThreads = threadsCount;
+        this.pool = Executors.newFixedThreadPool(threadsCount, r -> {
+            Thread t = new Thread(r, "miner");
+            t.setDaemon(true);  // do not prevent program exit
+            return t;
+        });
+    }
+
+    public ParallelMiner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getThreadsCount() {
+        return threadsCount;
+    }
+
+    /**
+     * Use only some of the threads for the next rounds - e.g. to leave cores for the network loop.
+     * Each thread keeps its own range so progress of idle threads is not lost.
+     * @param activeThreads - 1..getThreadsCount()
+     */
+    public void setActiveThreads(int activeThreads) {
+        this.activeThreads = Math.max(1, Math.min(threadsCount, activeThreads));
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /**
+     * Save search progress to this file while mining, and resume from it.
+     * @param checkpointFile - file path or null for in-memory progress only
+     */
+    public void setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @return total number of puzzle attempts done by this miner - used to calculate hash-rate
+     */
+    public long getAttemptsCount() {
+        return attemptsDone.sum();
+    }
+
+    /**
+     * Try to mine a block following prevBlock using all worker threads.
+     * Blocks the calling thread until a block is found, the attempts are exhausted or abort() is called.
+     * @param myWalletNum - wallet number to mine for
+     * @param prevBlock - the previous block in the chain
+     * @param attemptsPerThread - number of attempts each worker does before giving up
+     * @return a new block OR null if failed or aborted
+     */
+    public Block mine(int myWalletNum, Block prevBlock, long attemptsPerThread) throws InterruptedException {
+        return mine(myWalletNum, prevBlock, attemptsPerThread, () -> false);
+    }
+
+    /**
+     * Same as mine() - with a stop condition that workers check between batches.
+     * Unlike abort(), the condition also covers changes that happen before the round starts.
+     * @param stopWhen - called by the workers every CANCEL_CHECK_INTERVAL attempts, must be cheap
+     * @return a new block OR null if failed, aborted or stopped
+     */
+    public Block mine(int myWalletNum, Block prevBlock, long attemptsPerThread, BooleanSupplier stopWhen)
+            throws InterruptedException {
+        if (prevBlock.getWalletNumber() == myWalletNum) {
+            return null;  // no point in trying to mine - checkValidNext() would reject SAME_WALLET_PREV
+        }
+        int newSerialNum = prevBlock.getSerialNumber() + 1;
+        byte[] prevSig = new byte[8];
+        System.arraycopy(prevBlock.getBytes(), 24, prevSig, 0, 8);
+        Block template = Block.createNoSig(newSerialNum, myWalletNum, prevSig);
+
+        if (checkpoint == null || !checkpoint.isFor(template)) {
+            checkpoint = MiningCheckpoint.load(checkpointFile, template, threadsCount);
+        }
+        final MiningCheckpoint cp = checkpoint;
+
+        Round round = new Round(stopWhen);
+        currentRound = round;
+        List<Future<?>> futures = new ArrayList<>();
+        int workers = activeThreads;
+        for (int i = 0; i < workers; i++) {
+            final int worker = i;
+            final Block candidate = template.clone();
+            futures.add(pool.submit(() -> mineRange(round, candidate, cp, worker, attemptsPerThread)));
+        }
+        try {
+            for (Future<?> f : futures) {
+                while (true) {
+                    try {
+                        f.get(CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        saveCheckpoint(cp);
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("miner worker failed", e.getCause());
+        } finally {
+            round.done = true;  // in case we got interrupted - stop the workers
+            if (currentRound == round) {
+                currentRound = null;
+            }
+        }
+        Block winner = round.winner.get();
+        if (winner == null) {
+            saveCheckpoint(cp);
+        } else {
+            deleteCheckpoint();
+        }
+        return winner;
+    }
+
+    private void saveCheckpoint(MiningCheckpoint cp) {
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            cp.save(checkpointFile);
+        } catch (IOException e) {
+            System.out.println(String.format("ERROR saving mining checkpoint:\n  %s", e.toString()));
+        }
+    }
+
+    private void deleteCheckpoint() {
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            // stale checkpoint is ignored by load() anyway
+        }
+    }
+
+    /**
+     * Stop the current mining round - e.g. because the previous block changed.
+     * mine() would return null shortly after.
+     * Not latched - a call before mine() published its round is lost. Pass a stopWhen condition to mine()
+     * to cover a change that happens before the round starts (MiningController does).
+     */
+    public void abort() {
+        Round round = currentRound;
+        if (round != null) {
+            round.done = true;
+        }
+    }
+
+    public void shutdown() {
+        abort();
+        pool.shutdownNow();
+    }
+
+    private void mineRange(Round round, Block candidate, MiningCheckpoint cp, int worker, long attemptsCount) {
+        MiningBackend backend = MiningBackend.create();
+        backend.reset(candidate.getBytes());
+        int nZeros = HanukCoinUtils.numberOfZerosForPuzzle(candidate.getSerialNumber());
+        long limit = Math.min(attemptsCount, cp.remaining(worker));
+        long attempt = 0;
+        while (attempt < limit && !round.shouldStop()) {
+            int batch = (int) Math.min(limit - attempt, CANCEL_CHECK_INTERVAL);
+            long startPuzzle = cp.nextPuzzle(worker);
+            int found = backend.search(startPuzzle, batch, nZeros);
+            if (found >= 0) {
+                // enough zeros - fill puzzle and signature fields and recheck
+                candidate.setLongPuzzle(startPuzzle + found);
+                candidate.setSignaturePart(candidate.calcSignature());
+                if (candidate.checkSignature() == Block.BlockError.OK && round.winner.compareAndSet(null, candidate)) {
+                    round.done = true;
+                }
+                cp.advance(worker, found + 1);
+                attemptsDone.add(attempt + found + 1);
+                return;
+            }
+            cp.advance(worker, batch);
+            attempt += batch;
+        }
+        attemptsDone.add(attempt);
+    }
+}
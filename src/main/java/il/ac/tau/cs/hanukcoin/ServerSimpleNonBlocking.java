@@ -3,42 +3,87 @@ import java.io.IOException;
 // note - we use mostly java.nio API in this server
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
 /**
- * Simple request-response server that uses non-blocking TCP API
+ * Simple request-response server that uses non-blocking TCP API.
+ * A Selector reactor: OP_ACCEPT on the listen socket, OP_READ on a new connection until
+ * the request header is in, then OP_WRITE until the response is out. A closed connection is just a cancelled key.
+ * By default one thread does it all. With workers, the boss thread only accepts (and mines) and hands each
+ * connection to the least loaded worker reactor - each worker is a Selector on its own thread.
+ * A connection that does not start with "GET" speaks the binary cmd=1/cmd=2 protocol - see FrameDecoder.
+ * Reads and responses use direct buffers borrowed from a DirectBufferPool - an idle connection holds none.
  */
 class ServerSimpleNonBlocking {
     protected static int accepPort = 8080;
+    static final long DEFAULT_LATENCY_BUDGET_MILLI = 20;
+
+    // optional mining between handling connections - see enableMining()
+    private volatile BlockChain chain = null;
+    private ParallelMiner miner = null;
+    private MiningGovernor governor = null;
+    private WalletBalanceIndex balances = null;
+    private int myWalletNum = 0;
+    private volatile ThreadPoolExecutor adopter = null;  // validates received chains - never on a reactor thread
+    static final int ADOPTION_QUEUE = 4;  // received chains waiting for validation - more are dropped
+    static final String WORKERS_PROPERTY = "hanukcoin.workers";
+    static final String CHAIN_LOG_PROPERTY = "hanukcoin.chainlog";
+    static final long IDLE_SELECT_MILLI = 1000;  // only to look at the running flag - stop() wakes up anyway
+    static final int READ_BUF_SZ = 16 * 1024;
+    static final int FRAME_HEADER_SZ = 20;  // cmd, BeefBeef, 0 nodes, DeadDead, blocks count
+
+    final DirectBufferPool buffers = new DirectBufferPool();
+
+    private final int workersCount;
+    private volatile Reactor boss = null;
+    private Reactor[] workers = new Reactor[0];
+    private int nextWorker = 0;  // boss thread only
+    private volatile boolean running = true;
+    protected volatile int boundPort = -1;  // actual port - when accepPort is 0
 
     class ClientConnection {
         private SocketChannel connectionSocket;
+        private SelectionKey key;
+        private final Reactor reactor;
         private ByteBuffer inBuf = null;
-        private boolean isActive = true;
-        public ClientConnection(SocketChannel connectionSocket) {
+        private ByteBuffer outBuf = null;  // response not fully written yet
+        private boolean firstLine = true;
+        private FrameDecoder decoder = null;  // binary protocol connection
+        private final long startNanos = System.nanoTime();
+        public ClientConnection(SocketChannel connectionSocket, SelectionKey key, Reactor reactor) {
             this.connectionSocket = connectionSocket;
+            this.key = key;
+            this.reactor = reactor;
         }
 
         /**
          * Attempt to read more bytes from the Channel
+         * @return number of bytes read, -1 on end of stream
          * @throws IOException
          */
-        protected void readMore() throws IOException {
+        protected int readMore() throws IOException {
             // See https://howtodoinjava.com/java7/nio/java-nio-2-0-working-with-buffers/#buffer_attributes
             if (inBuf == null) {
-                inBuf = ByteBuffer.allocate(32 * 1024);
-            } else {
-                // append to end of buf
-                inBuf.compact();
-                inBuf.position(inBuf.limit()).limit(inBuf.capacity());
+                inBuf = buffers.acquire(READ_BUF_SZ);
+                inBuf.flip();  // empty, ready for reading
             }
-            connectionSocket.read(inBuf);
+            inBuf.compact();  // keep unread bytes, append after them
+            int n = connectionSocket.read(inBuf);
             inBuf.flip();
+            return n;
         }
 
         /**
@@ -60,6 +105,9 @@ class ServerSimpleNonBlocking {
                     eol_index = i;
                     next_line_index = i + 1;
                     if (b == CR) {
+                        if (i + 1 == end) {
+                            return null;  // wait for the '\n'
+                        }
                         // assume '\n' follows
                         next_line_index += 1;
                     }
@@ -69,43 +117,158 @@ class ServerSimpleNonBlocking {
             if (eol_index < 0) {
                 return null;
             }
+            byte[] line = new byte[eol_index - start];  // direct buffer - no array() to decode from
+            inBuf.get(start, line);
             inBuf.position(next_line_index);
-            return new String(inBuf.array(), start, eol_index - start, "utf-8");
+            return new String(line, "utf-8");
         }
 
-        private void handleHttp() {
+        /**
+         * Selector says there is data to read
+         */
+        private void handleRead() throws IOException {
             try {
-                boolean firstLine = true;
-                while(true) {
-                    readMore();
-                    String line = readLine();
-                    if (line == null) {
-                        // note line == null and line == "" is not the same
+                readRequest();
+            } finally {
+                if (inBuf != null && !inBuf.hasRemaining()) {
+                    buffers.release(inBuf);  // nothing pending - do not hold a buffer while idle
+                    inBuf = null;
+                }
+            }
+        }
+
+        private void readRequest() throws IOException {
+            if (readMore() < 0) {
+                close();  // peer closed before sending a full request
+                return;
+            }
+            if (firstLine && decoder == null && inBuf.hasRemaining() && inBuf.get(inBuf.position()) != 'G') {
+                decoder = new FrameDecoder();
+            }
+            if (decoder != null) {
+                handleFrame();
+                return;
+            }
+            while (true) {
+                String line = readLine();
+                if (line == null) {
+                    // note line == null and line == "" is not the same
+                    if (inBuf.position() > 0 || inBuf.limit() < inBuf.capacity()) {
                         return;   // not enough data in buffer
                     }
-                    if (firstLine) {
-                        firstLine = false;
-                        if (!line.startsWith("GET / ")) {
-                            connectionSocket.close();
-                            isActive = false;
-                            return;
-                        }
+                    close();  // buffer full and no line - not a request we handle
+                    return;
+                }
+                if (firstLine) {
+                    firstLine = false;
+                    if (!line.startsWith("GET / ")) {
+                        close();
+                        return;
                     }
-                    System.out.println(String.format("Http header: %s", line));
-                    if (line.length() == 0) {
-                        break;  // in HTTP empty line ends the header part
+                }
+                System.out.println(String.format("Http header: %s", line));
+                if (line.length() == 0) {
+                    break;  // in HTTP empty line ends the header part
+                }
+            }
+            sendHtml(); // send response - assume this is a "GET"
+        }
+
+        /**
+         * Binary connection - feed what was read to the decoder. inBuf is emptied on every read so it never
+         * holds more than one read, no matter how big the message is.
+         */
+        private void handleFrame() throws IOException {
+            FrameDecoder.Frame frame = decoder.feed(inBuf);
+            if (frame == null) {
+                return;  // wait for more fragments
+            }
+            if (adopter != null && !frame.blocks.isEmpty()) {
+                // validation may take long - the reactor answers now, the adopter thread validates
+                List<Block> received = frame.blocks;
+                adopter.execute(() -> {
+                    try {
+                        new ChainAdoption(chain).adopt(received);
+                    } catch (RuntimeException e) {
+                        System.out.println(String.format("ERROR adopting chain:\n  %s", e));
                     }
+                });
+            }
+            if (frame.cmd != 1) {
+                close();  // a response - nothing to answer
+                return;
+            }
+            sendFrame();
+        }
+
+        /**
+         * Answer cmd=1 with cmd=2: no nodes (this server keeps no node list) and our chain if mining
+         */
+        protected void sendFrame() throws IOException {
+            if (chain == null) {
+                outBuf = buffers.acquire(FRAME_HEADER_SZ);
+                putFrameHeader(0);
+            } else {
+                synchronized (chain) {
+                    // blocks go straight from the chain store to the socket buffer
+                    outBuf = buffers.acquire(FRAME_HEADER_SZ + chain.size() * Block.BLOCK_SZ);
+                    putFrameHeader(chain.size());
+                    chain.writeBlocks(outBuf);
                 }
-                sendHtml(); // send response - assume this is a "GET"
+            }
+            outBuf.flip();
+            key.interestOps(SelectionKey.OP_WRITE);
+            handleWrite();
+        }
+
+        private void putFrameHeader(int blocksCount) {
+            outBuf.putInt(2);
+            outBuf.putInt(ShowChain3.BEEF_BEEF);
+            outBuf.putInt(0);
+            outBuf.putInt(ShowChain3.DEAD_DEAD);
+            outBuf.putInt(blocksCount);
+        }
+
+        /**
+         * Selector says we can write - continue the response
+         */
+        private void handleWrite() throws IOException {
+            connectionSocket.write(outBuf);
+            if (outBuf.hasRemaining()) {
+                return;  // socket buffer full - wait for OP_WRITE again
+            }
+            if (governor != null) {
+                governor.recordRequestLatency(System.nanoTime() - startNanos);
+            }
+            reactor.requestDone(outBuf.limit());
+            close();  // "Connection: Closed"
+        }
+
+        private void close() {
+            if (!key.isValid()) {
+                return;  // already closed
+            }
+            reactor.connectionClosed();
+            key.cancel();
+            buffers.release(inBuf);
+            buffers.release(outBuf);
+            inBuf = null;
+            outBuf = null;
+            try {
+                connectionSocket.close();
             } catch (IOException e) {
-                throw new RuntimeException(e); ///e.printStackTrace();
+                // closing anyway
             }
         }
 
         protected void sendHtml() throws IOException {
             String html = String.format("<html><body>I am alive<br/>" +
-                    "I am non-blocking server connection:%s" +
-                    "</body></html>\r\n", this.toString());
+                    "I am non-blocking server connection:%s<br/>" +
+                    "mining: %s<br/>" +
+                    "top wallets: %s<br/>" +
+                    "reactors: %s" +
+                    "</body></html>\r\n", this.toString(), governor == null ? "off" : governor.getDecision(),
+                    balances == null ? "-" : balances.top(), getReactorStats());
             int contentLen = html.length();
             HashMap<String, String> header = new HashMap<>();
             header.put("Content-Length", new Integer(contentLen).toString());
@@ -118,57 +281,416 @@ class ServerSimpleNonBlocking {
             String headerFull = responseLine + headerText + "\r\n\r\n";
             String response = headerFull + html;
             System.out.println(headerFull);
-            connectionSocket.write(ByteBuffer.wrap(response.getBytes()));
+            byte[] responseBytes = response.getBytes();
+            outBuf = buffers.acquire(responseBytes.length);
+            outBuf.put(responseBytes).flip();
+            key.interestOps(SelectionKey.OP_WRITE);  // done reading
+            handleWrite();  // usually all fits in the socket buffer - no need to wait for the selector
+        }
+    }
+
+    /**
+     * @param workersCount - worker reactors for the connections. 0 - the boss thread handles them too
+     */
+    public ServerSimpleNonBlocking(int workersCount) {
+        this.workersCount = workersCount;
+    }
+
+    public ServerSimpleNonBlocking() {
+        this(0);
+    }
+
+    /**
+     * Mine in the server loop, between handling connections.
+     * The MiningGovernor sizes each mining slice so requests are not delayed beyond the budget.
+     * @param chain - chain to mine on
+     * @param myWalletNum - wallet to mine for
+     * @param latencyBudgetNanos - p99 request latency to keep
+     */
+    public void enableMining(BlockChain chain, int myWalletNum, long latencyBudgetNanos) {
+        serveChain(chain);
+        this.myWalletNum = myWalletNum;
+        this.miner = new ParallelMiner();
+        this.governor = new MiningGovernor(latencyBudgetNanos, miner.getThreadsCount());
+        this.balances = WalletBalanceIndex.attach(chain, 10);
+        chain.addListener(newTip -> {
+            Reactor b = boss;
+            if (b != null) {
+                b.selector.wakeup();  // may have mining work again - do not wait in select()
+            }
+        });
+    }
+
+    /**
+     * Answer binary requests with chain and adopt better chains received from peers - also without mining.
+     * Received chains are validated on one adopter thread, in order. When it falls behind, new ones are dropped -
+     * the peer sends its chain again on the next exchange.
+     */
+    public void serveChain(BlockChain chain) {
+        this.chain = chain;
+        if (adopter != null) {
+            return;
         }
+        adopter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(ADOPTION_QUEUE),
+                r -> {
+                    Thread t = new Thread(r, "chain-adopter");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
     }
 
-    private ArrayList<ClientConnection> connections = new ArrayList<>();
+    /**
+     * Do one mining slice if mining is enabled
+     * @return true if mined, false if there was nothing to do
+     */
+    private boolean mineSlice() throws InterruptedException {
+        if (governor == null) {
+            return false;
+        }
+        Block tip = chain.getTip();
+        if (tip.getWalletNumber() == myWalletNum) {
+            return false;  // our block is the tip - wait for others
+        }
+        miner.setActiveThreads(governor.getMinerThreads());
+        long attemptsBefore = miner.getAttemptsCount();
+        long t1 = System.nanoTime();
+        Block newBlock = miner.mine(myWalletNum, tip, governor.getAttemptsPerSlice());
+        long t2 = System.nanoTime();
+        long attemptsPerThread = (miner.getAttemptsCount() - attemptsBefore) / miner.getActiveThreads();
+        governor.recordSlice(attemptsPerThread, t2 - t1);
+        if (newBlock != null) {
+            chain.append(newBlock);
+        }
+        return true;
+    }
+
+    /**
+     * Per reactor counters - see getReactorStats()
+     */
+    public record ReactorStats(int id, int connections, long requests, long bytesWritten) {
+    }
+
+    /**
+     * A Selector and the connections registered with it. The boss reactor runs in runServer() and owns the
+     * accept socket; worker reactors run on their own thread and get connections from the boss.
+     * A connection stays on its reactor - its buffers and the counters here are only touched by that thread.
+     */
+    class Reactor implements Runnable {
+        final int id;
+        final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        // single writer (the reactor thread) - volatile only so other threads can read them
+        private volatile int connectionsCount = 0;
+        private volatile long requestsCount = 0;
+        private volatile long bytesWritten = 0;
+        private volatile long closedCount = 0;
+        private long assignedCount = 0;  // boss thread only - counts connections not registered yet too
+
+        Reactor(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Hand an accepted connection to this reactor - called by the boss thread
+         */
+        void assign(SocketChannel connectionSocket) {
+            assignedCount++;
+            pending.add(connectionSocket);
+            selector.wakeup();
+        }
+
+        /**
+         * Worker loop
+         */
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(IDLE_SELECT_MILLI);
+                    registerPending();
+                    handleKeys();
+                }
+            } catch (IOException e) {
+                System.out.println(String.format("ERROR select in reactor %d:\n  %s", id, e.toString()));
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel connectionSocket;
+            while ((connectionSocket = pending.poll()) != null) {
+                try {
+                    register(connectionSocket);
+                } catch (IOException e) {
+                    System.out.println(String.format("ERROR register:\n  %s", e.toString()));
+                }
+            }
+        }
+
+        private void register(SocketChannel connectionSocket) throws IOException {
+            connectionSocket.configureBlocking(false);
+            SelectionKey key = connectionSocket.register(selector, SelectionKey.OP_READ);
+            key.attach(new ClientConnection(connectionSocket, key, this));
+            connectionsCount++;
+        }
+
+        void connectionClosed() {
+            connectionsCount--;
+            closedCount++;
+        }
+
+        /**
+         * @return open connections as the boss sees them - call from the boss thread
+         */
+        long load() {
+            return assignedCount - closedCount;
+        }
 
+        void requestDone(long bytes) {
+            requestsCount++;
+            bytesWritten += bytes;
+        }
+
+        /**
+         * Handle the sockets the last select() found ready
+         */
+        void handleKeys() {
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept((ServerSocketChannel) key.channel());
+                    continue;
+                }
+                ClientConnection conn = (ClientConnection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        conn.handleRead();
+                    } else if (key.isWritable()) {
+                        conn.handleWrite();
+                    }
+                } catch (IOException e) {
+                    conn.close();  // cancels the key - nothing else refers to the connection
+                } catch (RuntimeException e) {
+                    // a bug or a bad peer must not kill the reactor and all its other connections
+                    System.out.println(String.format("ERROR handling connection:\n  %s", e));
+                    conn.close();
+                }
+            }
+        }
+
+        void closeAll() {
+            SocketChannel notRegistered;
+            while ((notRegistered = pending.poll()) != null) {
+                try {
+                    notRegistered.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+
+        ReactorStats stats() {
+            return new ReactorStats(id, connectionsCount, requestsCount, bytesWritten);
+        }
+    }
+
+    /**
+     * Reactor loop - the boss Selector has the accept socket, and all connections when there are no workers.
+     * Without mining, select() blocks until a socket is ready - no polling, no added latency.
+     * With mining, selectNow() handles whatever is ready and the rest of the loop is a mining slice.
+     */
     public void runServer() throws InterruptedException {
         ServerSocketChannel acceptSocket = null;
         try {
+            boss = new Reactor(0);
+            workers = new Reactor[workersCount];
+            for (int i = 0; i < workersCount; i++) {
+                workers[i] = new Reactor(i + 1);
+            }
             acceptSocket = ServerSocketChannel.open();
             acceptSocket.configureBlocking(false);  // non-blocking to allow loop to handle other things
             acceptSocket.socket().bind(new InetSocketAddress(accepPort));
+            acceptSocket.register(boss.selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
             System.out.println(String.format("ERROR accepting at port %d", accepPort));
             return;
         }
+        List<Thread> workerThreads = new ArrayList<>();
+        for (Reactor w : workers) {
+            Thread t = new Thread(w, "reactor-" + w.id);
+            t.setDaemon(true);
+            t.start();
+            workerThreads.add(t);
+        }
+        boundPort = acceptSocket.socket().getLocalPort();
 
-        while (true) {
-            SocketChannel connectionSocket = null;
-            try {
-                connectionSocket = acceptSocket.accept();
-                if (connectionSocket != null) {
-                    connections.add(new ClientConnection(connectionSocket));
+        try {
+            while (running) {
+                try {
+                    if (hasMiningWork()) {
+                        boss.selector.selectNow();
+                    } else {
+                        boss.selector.select(IDLE_SELECT_MILLI);  // wakes up when a socket is ready
+                    }
+                } catch (IOException e) {
+                    System.out.println(String.format("ERROR select:\n  %s", e.toString()));
+                    return;
                 }
+                boss.handleKeys();
+                mineSlice();
+            }
+        } finally {
+            try {
+                acceptSocket.close();
             } catch (IOException e) {
-                System.out.println(String.format("ERROR accept:\n  %s", e.toString()));
+                // closing anyway
+            }
+            boss.closeAll();
+            for (Reactor w : workers) {
+                w.selector.wakeup();
+            }
+            for (Thread t : workerThreads) {
+                t.join();
+            }
+            if (adopter != null) {
+                adopter.shutdownNow();
             }
-            handleConnections();
-            Thread.sleep(50);  // prevent tight loop
         }
     }
 
     /**
-     * go over all live connections hand see if there is data to handle.
+     * Stop runServer() - may be called from another thread
+     */
+    public void stop() {
+        running = false;
+        Reactor b = boss;
+        if (b != null) {
+            b.selector.wakeup();
+        }
+    }
+
+    /**
+     * @return number of open client connections, all reactors
      */
-    private void handleConnections() {
-        for (ClientConnection conn : connections) {
-            if (conn.isActive) {
-                conn.handleHttp();
+    public int getConnectionsCount() {
+        int count = 0;
+        for (ReactorStats stats : getReactorStats()) {
+            count += stats.connections();
+        }
+        return count;
+    }
+
+    /**
+     * @return counters of the boss reactor and then of each worker
+     */
+    public List<ReactorStats> getReactorStats() {
+        List<ReactorStats> stats = new ArrayList<>();
+        Reactor b = boss;
+        if (b != null) {
+            stats.add(b.stats());
+            for (Reactor w : workers) {
+                stats.add(w.stats());
             }
-            // TODO(franji): if !conn.isAlive - remove from connections[]
         }
+        return stats;
     }
 
+    private boolean hasMiningWork() {
+        return governor != null && chain.getTip().getWalletNumber() != myWalletNum;
+    }
+
+    private void accept(ServerSocketChannel acceptSocket) {
+        try {
+            SocketChannel connectionSocket;
+            while ((connectionSocket = acceptSocket.accept()) != null) {  // all pending - one wakeup may cover many
+                if (workers.length == 0) {
+                    boss.register(connectionSocket);
+                } else {
+                    pickWorker().assign(connectionSocket);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(String.format("ERROR accept:\n  %s", e.toString()));
+        }
+    }
+
+    /**
+     * Least loaded worker - on a tie the next one round-robin, so a burst of accepts is spread too
+     */
+    private Reactor pickWorker() {
+        int n = workers.length;
+        Reactor best = null;
+        for (int i = 0; i < n; i++) {
+            Reactor w = workers[(nextWorker + i) % n];
+            if (best == null || w.load() < best.load()) {
+                best = w;
+            }
+        }
+        nextWorker = (nextWorker + 1) % n;
+        return best;
+    }
+
+
+    /**
+     * @param logPath - ChainLog file to load the chain from and keep it in - null for a chain that starts at genesis every run
+     * @return chain - if logPath is given it is persisted there on every tip change
+     */
+    static BlockChain openChain(String logPath) {
+        if (logPath == null) {
+            return new BlockChain(HanukCoinUtils.createBlock0forTestStage());
+        }
+        ChainLog log;
+        try {
+            log = ChainLog.open(java.nio.file.Paths.get(logPath));  // open for the life of the process
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot open chain log " + logPath, e);
+        }
+        BlockChain loaded = log.loadChain(false);
+        BlockChain chain = loaded != null ? loaded : new BlockChain(HanukCoinUtils.createBlock0forTestStage());
+        chain.addListener(newTip -> {
+            try {
+                log.persist(chain);
+            } catch (IOException e) {
+                System.out.println(String.format("ERROR persisting chain:\n  %s", e));
+            }
+        });
+        return chain;
+    }
 
     public static void main(String argv[]) {
         if (argv.length > 0) {
             // allow changing accept port
             accepPort = Integer.parseInt(argv[0]);
         }
-        ServerSimpleNonBlocking server = new ServerSimpleNonBlocking();
+        // e.g. -Dhanukcoin.workers=4 - spread connections over 4 selector threads
+        ServerSimpleNonBlocking server = new ServerSimpleNonBlocking(Integer.getInteger(WORKERS_PROPERTY, 0));
+        if (argv.length > 1) {
+            // mine for a team: PORT TEAM_NAME [LATENCY_BUDGET_MILLI]
+            // e.g. -Dhanukcoin.chainlog=chain.log - survive restarts
+            long budgetMilli = argv.length > 2 ? Long.parseLong(argv[2]) : DEFAULT_LATENCY_BUDGET_MILLI;
+            BlockChain chain = openChain(System.getProperty(CHAIN_LOG_PROPERTY));
+            server.enableMining(chain, HanukCoinUtils.walletCode(argv[1]), budgetMilli * 1000000);
+        }
         try {
             server.runServer();
         } catch (InterruptedException e) {
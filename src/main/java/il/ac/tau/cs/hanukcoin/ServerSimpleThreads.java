@@ -8,14 +8,64 @@ import java.net.Socket;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
 /**
  * Created by talfranji on 17/02/2020.
+ * Two modes:
+ * - default - a new platform thread per connection, unbounded
+ * - virtual - a virtual thread per connection (Java 21), at most maxConnections at once - accept waits for a free
+ *   slot, so a flood of peers queues in the TCP backlog instead of eating memory. Each read times out with
+ *   SO_TIMEOUT, and a watchdog closes the socket if the whole request header is not in within the timeout
+ *   (a peer sending a byte now and then never trips SO_TIMEOUT) or if the response write takes longer.
+ * The connection code is the same blocking DataInputStream/DataOutputStream code in both modes.
  */
 class ServerSimpleThreads {
     protected static int accepPort = 8080;
+    static final int DEFAULT_MAX_CONNECTIONS = 10000;
+    static final int DEFAULT_TIMEOUT_MILLI = 5000;
+    static final long ACQUIRE_WAIT_MILLI = 200;  // at the cap - look at the running flag this often
+
+    private final ExecutorService executor;  // null - platform thread per connection
+    private final Semaphore permits;
+    private final int maxConnections;
+    private final int timeoutMilli;
+    private final ScheduledExecutorService watchdog;
+    private volatile boolean running = true;
+    private volatile ServerSocketChannel acceptSocket = null;
+    protected volatile int boundPort = -1;  // actual port - when accepPort is 0
+
+    public ServerSimpleThreads() {
+        executor = null;
+        permits = null;
+        maxConnections = 0;
+        timeoutMilli = 0;
+        watchdog = null;
+    }
+
+    /**
+     * Virtual thread mode
+     * @param maxConnections - connections handled at once
+     * @param timeoutMilli - max time to read the request header, and to write the response
+     */
+    public ServerSimpleThreads(int maxConnections, int timeoutMilli) {
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.permits = new Semaphore(maxConnections);
+        this.maxConnections = maxConnections;
+        this.timeoutMilli = timeoutMilli;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "write-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
 
 
     class ClientConnection {
@@ -27,6 +77,9 @@ class ServerSimpleThreads {
             isIncomming = incomming;
             this.connectionSocket = connectionSocket;
             try {
+                if (timeoutMilli > 0) {
+                    connectionSocket.setSoTimeout(timeoutMilli);  // reads throw SocketTimeoutException
+                }
                 dataInput = new DataInputStream(connectionSocket.getInputStream());
                 dataOutput = new DataOutputStream(connectionSocket.getOutputStream());
             } catch (IOException e) {
@@ -35,6 +88,16 @@ class ServerSimpleThreads {
         }
 
         public void runInThread() {
+            if (executor != null) {
+                executor.execute(() -> {
+                    try {
+                        connectionThread();
+                    } finally {
+                        permits.release();
+                    }
+                });
+                return;
+            }
             new Thread(new Runnable() {
                 @Override
                 public void run() {
@@ -50,10 +113,16 @@ class ServerSimpleThreads {
 
         private void connectionThread() {
             //This function runs in a separate thread to handle the connection
+            // a blocking read has only a per-read timeout - close the socket if the whole header takes too long
+            ScheduledFuture<?> headerDeadline = watchdog == null ? null
+                    : watchdog.schedule(this::closeSocket, timeoutMilli, TimeUnit.MILLISECONDS);
             try {
                 boolean firstLine = true;
                 while(true) {
                     String line = dataInput.readLine();  // This is blocking
+                    if (line == null) {
+                        return;  // closed before end of header
+                    }
                     if (firstLine) {
                         firstLine = false;
                         if (!line.startsWith("GET / ")) {
@@ -65,9 +134,15 @@ class ServerSimpleThreads {
                         break;
                     }
                 }
+                if (headerDeadline != null) {
+                    headerDeadline.cancel(false);
+                }
                 sendHtml();
             } catch (IOException e) {
             } finally {
+                if (headerDeadline != null) {
+                    headerDeadline.cancel(false);
+                }
                 try {
                     connectionSocket.close();
                 } catch (IOException e) {
@@ -92,8 +167,25 @@ class ServerSimpleThreads {
             String headerFull = responseLine + headerText + "\r\n\r\n";
             System.out.println(headerFull);
             String response = headerFull + html;
-            dataOutput.write(response.getBytes("utf-8"));
-            dataOutput.flush();
+            // a blocking socket write has no timeout - close the socket if it takes too long, the write then fails
+            ScheduledFuture<?> timeout = watchdog == null ? null
+                    : watchdog.schedule(this::closeSocket, timeoutMilli, TimeUnit.MILLISECONDS);
+            try {
+                dataOutput.write(response.getBytes("utf-8"));
+                dataOutput.flush();
+            } finally {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+        }
+
+        private void closeSocket() {
+            try {
+                connectionSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
         }
     }
 
@@ -102,32 +194,74 @@ class ServerSimpleThreads {
         try {
             acceptSocket = ServerSocketChannel.open();
             acceptSocket.socket().bind(new InetSocketAddress(accepPort));
+            this.acceptSocket = acceptSocket;
+            boundPort = acceptSocket.socket().getLocalPort();
         } catch (IOException e) {
             System.out.println(String.format("ERROR accepting at port %d", accepPort));
             return;
         }
 
-        while (true) {
+        while (running) {
             SocketChannel connectionSocket = null;
+            if (permits != null && !permits.tryAcquire(ACQUIRE_WAIT_MILLI, TimeUnit.MILLISECONDS)) {
+                continue;  // at the cap - do not accept until a connection ends, unless stopped meanwhile
+            }
             try {
                 connectionSocket = acceptSocket.accept(); // this blocks
                 if (connectionSocket != null) {
                     new ClientConnection(connectionSocket.socket(), true).runInThread();
+                    continue;
                 }
             } catch (IOException e) {
-                System.out.println(String.format("ERROR accept:\n  %s", e.toString()));
-                continue;
+                if (running) {
+                    System.out.println(String.format("ERROR accept:\n  %s", e.toString()));
+                }
+            }
+            if (permits != null) {
+                permits.release();  // nothing accepted
+            }
+        }
+        if (executor != null) {
+            executor.shutdown();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop runServer() - may be called from another thread. Connections in progress finish.
+     */
+    public void stop() {
+        running = false;
+        ServerSocketChannel s = acceptSocket;
+        if (s != null) {
+            try {
+                s.close();  // accept() throws
+            } catch (IOException e) {
+                // ignore
             }
         }
     }
 
+    /**
+     * @return connections being handled now - virtual thread mode only
+     */
+    public int getActiveConnections() {
+        return permits == null ? 0 : maxConnections - permits.availablePermits();
+    }
+
 
     public static void main(String argv[]) {
         if (argv.length > 0) {
             // allow changing accept port
             accepPort = Integer.parseInt(argv[0]);
         }
+        // PORT [virtual [MAX_CONNECTIONS [TIMEOUT_MILLI]]]
         ServerSimpleThreads server = new ServerSimpleThreads();
+        if (argv.length > 1 && argv[1].equals("virtual")) {
+            int maxConnections = argv.length > 2 ? Integer.parseInt(argv[2]) : DEFAULT_MAX_CONNECTIONS;
+            int timeoutMilli = argv.length > 3 ? Integer.parseInt(argv[3]) : DEFAULT_TIMEOUT_MILLI;
+            server = new ServerSimpleThreads(maxConnections, timeoutMilli);
+        }
         try {
             server.runServer();
         } catch (InterruptedException e) {
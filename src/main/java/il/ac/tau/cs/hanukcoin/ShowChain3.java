@@ -4,6 +4,7 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.SynchronousQueue;
@@ -25,6 +26,15 @@ public class ShowChain3 {
         System.out.format(fmt + "\n", args);
     }
     public SynchronousQueue<Object> messageQ = new SynchronousQueue<>();
+    private final WalletNames walletNames;
+
+    public ShowChain3(WalletNames walletNames) {
+        this.walletNames = walletNames;
+    }
+
+    public ShowChain3() {
+        this(new WalletNames());
+    }
 
     static class NodeInfo {
         // FRANJI: Discussion - public members - pro/cons. What is POJO
@@ -53,6 +63,19 @@ public class ShowChain3 {
             // TODO(students): update extra fields
             return n;
         }
+
+        public static void writeLenStr(DataOutputStream dos, String s) throws IOException {
+            byte[] strBytes = s.getBytes("utf-8");
+            dos.writeByte(strBytes.length);
+            dos.write(strBytes);
+        }
+
+        public void writeTo(DataOutputStream dos) throws IOException {
+            writeLenStr(dos, name);
+            writeLenStr(dos, host);
+            dos.writeShort(port);
+            dos.writeInt(lastSeenTS);
+        }
     }
 
     class ParsedMessage {
@@ -75,6 +98,11 @@ public class ShowChain3 {
             }
         }
 
+        public ClientConnection(DataInputStream dataInput, DataOutputStream dataOutput) {
+            this.dataInput = dataInput;
+            this.dataOutput = dataOutput;
+        }
+
         public void sendReceive() {
             try {
                 sendRequest(1, dataOutput);
@@ -142,13 +170,18 @@ public class ShowChain3 {
     }
 
     private void printMessage(List<NodeInfo> receivedNodes, List<Block> receivedBlocks) {
+        // names of these nodes are hashed in the background - this print shows the names known so far
+        // (others in hex) and the next prints show the new ones. Saved in the background too, if changed
+        walletNames.observeNodes(receivedNodes);
+        walletNames.flush();
         println("==== Nodes ====");
         for (NodeInfo ni : receivedNodes) {
             println("%20s\t%s:%s\t%d",ni.name,  ni.host, ni.port, ni.lastSeenTS);
         }
         println("==== Blocks ====");
         for (Block b : receivedBlocks) {
-            println("%5d\t0x%08x\t%s", b.getSerialNumber(), b.getWalletNumber(), b.binDump().replace("\n", "  "));
+            println("%5d\t%20s\t%s", b.getSerialNumber(), walletNames.format(b.getWalletNumber()),
+                    b.binDump().replace("\n", "  "));
         }
     }
 
@@ -202,7 +235,13 @@ public class ShowChain3 {
             hostPort.add(new HostPort(addr, port));
 
         }
-        ShowChain3 app = new ShowChain3();
+        ShowChain3 app;
+        try {
+            app = new ShowChain3(new WalletNames(Paths.get("wallet.names")));
+        } catch (IOException e) {
+            println("ERROR - cannot read wallet.names: %s", e.toString());
+            return;
+        }
         try {
             app.sendReceive(hostPort);
         } catch (InterruptedException e) {
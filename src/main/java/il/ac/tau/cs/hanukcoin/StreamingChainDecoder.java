@@ -0,0 +1,167 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parse a cmd=1/cmd=2 message and check its block list against our chain while the bytes arrive.
+ * Unlike ShowChain3.parseMessage() nothing is kept that we would throw away anyway:
+ * - a block list shorter than ours loses the fork choice - its bytes are skipped unread
+ * - blocks identical to ours (same serial number) are compared byte by byte in one scratch buffer -
+ *   no allocation and no MD5. A list identical to ours costs only the compare.
+ * - the first block that differs is the fork point. Blocks after it are checked against the previous block
+ *   as they arrive; on the first bad block the rest of the frame is skipped.
+ * - for a list of our length the last puzzle decides - signatures are checked only if it wins
+ * The node list is always parsed - it is needed for gossip regardless of the blocks.
+ */
+public class StreamingChainDecoder {
+    public enum Outcome {
+        BETTER,   // valid and wins the fork choice - adopt()
+        SAME,     // identical to our chain
+        LOSES,    // shorter, or same length with a bigger last puzzle
+        INVALID   // bad genesis or a bad block
+    }
+
+    public static class Decoded {
+        public int cmd;
+        public Outcome outcome;
+        public ArrayList<ShowChain3.NodeInfo> nodes = new ArrayList<>();
+        public int blockCount;
+        public int forkPoint = -1;        // last block that is the same as ours
+        public Block forkBlock = null;    // our block at forkPoint
+        public List<Block> suffix = new ArrayList<>();  // received blocks after forkPoint
+        public int badIndex = -1;
+        public Block.BlockError error = Block.BlockError.OK;
+    }
+
+    private final BlockChain chain;
+    private final Block scratchBlock = Block.createEmpty();
+
+    public StreamingChainDecoder(BlockChain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * Read one message from dis. Always consumes the full frame so the stream can be used for the next message.
+     * @param dis - stream positioned at the cmd field
+     * @return parse result. For Outcome.BETTER call adopt()
+     */
+    public Decoded decode(DataInputStream dis) throws IOException {
+        return decode(dis.readInt(), dis);
+    }
+
+    /**
+     * Same as decode(dis) - for when the cmd field was already read, e.g. to pick a handler by cmd
+     * @param cmd - the cmd field
+     * @param dis - stream positioned right after the cmd field
+     */
+    public Decoded decode(int cmd, DataInputStream dis) throws IOException {
+        Decoded d = new Decoded();
+        d.cmd = cmd;
+        if (dis.readInt() != ShowChain3.BEEF_BEEF) {
+            throw new IOException("Bad message no BeefBeef");
+        }
+        int nodesCount = dis.readInt();
+        for (int ni = 0; ni < nodesCount; ni++) {
+            d.nodes.add(ShowChain3.NodeInfo.readFrom(dis));
+        }
+        if (dis.readInt() != ShowChain3.DEAD_DEAD) {
+            throw new IOException("Bad message no DeadDead");
+        }
+        d.blockCount = dis.readInt();
+        if (d.blockCount < 0) {
+            throw new IOException("Bad message negative blocks count");
+        }
+        int ourSize = chain.size();
+        if (d.blockCount < ourSize) {
+            d.outcome = Outcome.LOSES;
+            skipBlocks(dis, d.blockCount);
+            return d;
+        }
+        decodeBlocks(dis, d, ourSize);
+        return d;
+    }
+
+    private void decodeBlocks(DataInputStream dis, Decoded d, int ourSize) throws IOException {
+        int i = 0;
+        // shared prefix - compare only
+        for (; i < d.blockCount; i++) {
+            dis.readFully(scratchBlock.getBytes());
+            if (i >= ourSize || !chain.blockEquals(i, scratchBlock)) {
+                break;
+            }
+            d.forkPoint = i;
+        }
+        if (d.forkPoint < 0) {
+            invalid(dis, d, 0, Block.BlockError.NO_PREV_SIG, 1);  // different genesis
+            return;
+        }
+        if (i == d.blockCount) {
+            d.outcome = Outcome.SAME;
+            return;
+        }
+        d.forkBlock = chain.get(d.forkPoint);
+        // block i is already in scratchBlock
+        boolean sameLength = d.blockCount == ourSize;
+        Block prev = d.forkBlock;
+        for (; i < d.blockCount; i++) {
+            Block b;
+            if (i == d.forkPoint + 1) {
+                b = scratchBlock.clone();
+            } else {
+                b = Block.createEmpty();
+                dis.readFully(b.getBytes());
+            }
+            // same length - only linkage now, signatures after we know the last puzzle wins
+            Block.BlockError error = sameLength ? b.checkLinkage(prev) : b.checkValidNext(prev);
+            if (error != Block.BlockError.OK) {
+                invalid(dis, d, i, error, i + 1);
+                return;
+            }
+            d.suffix.add(b);
+            prev = b;
+        }
+        if (!chain.isBetter(d.blockCount, prev)) {
+            d.outcome = Outcome.LOSES;
+            return;
+        }
+        if (sameLength) {
+            for (int k = 0; k < d.suffix.size(); k++) {
+                Block.BlockError error = d.suffix.get(k).checkSignature();
+                if (error != Block.BlockError.OK) {
+                    d.outcome = Outcome.INVALID;
+                    d.error = error;
+                    d.badIndex = d.forkPoint + 1 + k;
+                    return;
+                }
+            }
+        }
+        d.outcome = Outcome.BETTER;
+    }
+
+    private void invalid(DataInputStream dis, Decoded d, int index, Block.BlockError error, int blocksRead) throws IOException {
+        d.outcome = Outcome.INVALID;
+        d.badIndex = index;
+        d.error = error;
+        d.suffix.clear();
+        skipBlocks(dis, d.blockCount - blocksRead);
+    }
+
+    private static void skipBlocks(DataInputStream dis, int count) throws IOException {
+        dis.skipNBytes((long) count * Block.BLOCK_SZ);
+    }
+
+    /**
+     * Put the received blocks after the fork point into our chain
+     * @param d - result of decode() with Outcome.BETTER
+     * @return true if adopted - false if our chain changed meanwhile and the received one is no longer better
+     */
+    public boolean adopt(Decoded d) {
+        if (d.outcome != Outcome.BETTER) {
+            return false;
+        }
+        return chain.replaceSuffix(d.forkPoint, d.forkBlock, d.suffix);
+    }
+}
@@ -0,0 +1,156 @@
+package il.ac.tau.cs.hanukcoin;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD mining backend - runs the Md5Kernel steps on IntVector lanes, one puzzle per lane.
+ * Lane count comes from the preferred vector shape of the running CPU (4, 8 or 16 ints).
+ * Lanes that pass the D word zero check are re-checked with the scalar Md5Kernel - so exactly the
+ * puzzles that Block.checkSignature() accepts are reported.
+ * Needs --add-modules jdk.incubator.vector - use MiningBackend.create() which falls back to Md5Kernel.
+ */
+class VectorMd5Backend implements MiningBackend {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    static final int MIN_LANES = 4;
+
+    private final Md5Kernel scalar = new Md5Kernel();
+    private final int[] km = new int[64];
+    private final int[] m4s = new int[SPECIES.length()];
+    private final int[] m5s = new int[SPECIES.length()];
+    private int a3, b3, c3, d3;
+
+    VectorMd5Backend() {
+        if (SPECIES.length() < MIN_LANES) {
+            throw new UnsupportedOperationException("no SIMD support - " + SPECIES);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + SPECIES.length();
+    }
+
+    @Override
+    public void reset(byte[] blockData) {
+        scalar.reset(blockData);
+        scalar.copyRoundState(km);
+        a3 = scalar.getState3(0);
+        b3 = scalar.getState3(1);
+        c3 = scalar.getState3(2);
+        d3 = scalar.getState3(3);
+    }
+
+    @Override
+    public int search(long startPuzzle, int count, int nZeros) {
+        final int lanes = SPECIES.length();
+        final int[] km = this.km;
+        // zero check on D before reverseBytes - so reverse the mask instead
+        int maskD = Integer.reverseBytes(nZeros >= 32 ? -1 : (1 << nZeros) - 1);
+        int i = 0;
+        for (; i + lanes <= count; i += lanes) {
+            for (int lane = 0; lane < lanes; lane++) {
+                long puzzle = startPuzzle + i + lane;
+                m4s[lane] = Integer.reverseBytes((int) (puzzle >>> 32));
+                m5s[lane] = Integer.reverseBytes((int) puzzle);
+            }
+            IntVector m4 = IntVector.fromArray(SPECIES, m4s, 0);
+            IntVector m5 = IntVector.fromArray(SPECIES, m5s, 0);
+            IntVector a = IntVector.broadcast(SPECIES, a3);
+            IntVector b = IntVector.broadcast(SPECIES, b3);
+            IntVector c = IntVector.broadcast(SPECIES, c3);
+            IntVector d = IntVector.broadcast(SPECIES, d3);
+            a = ff(a.add(km[4]).add(m4), b, c, d, 7);
+            d = ff(d.add(km[5]).add(m5), a, b, c, 12);
+            c = ff(c.add(km[6]), d, a, b, 17);
+            b = ff(b.add(km[7]), c, d, a, 22);
+            a = ff(a.add(km[8]), b, c, d, 7);
+            d = ff(d.add(km[9]), a, b, c, 12);
+            c = ff(c.add(km[10]), d, a, b, 17);
+            b = ff(b.add(km[11]), c, d, a, 22);
+            a = ff(a.add(km[12]), b, c, d, 7);
+            d = ff(d.add(km[13]), a, b, c, 12);
+            c = ff(c.add(km[14]), d, a, b, 17);
+            b = ff(b.add(km[15]), c, d, a, 22);
+            a = gg(a.add(km[16]), b, c, d, 5);
+            d = gg(d.add(km[17]), a, b, c, 9);
+            c = gg(c.add(km[18]), d, a, b, 14);
+            b = gg(b.add(km[19]), c, d, a, 20);
+            a = gg(a.add(km[20]).add(m5), b, c, d, 5);
+            d = gg(d.add(km[21]), a, b, c, 9);
+            c = gg(c.add(km[22]), d, a, b, 14);
+            b = gg(b.add(km[23]).add(m4), c, d, a, 20);
+            a = gg(a.add(km[24]), b, c, d, 5);
+            d = gg(d.add(km[25]), a, b, c, 9);
+            c = gg(c.add(km[26]), d, a, b, 14);
+            b = gg(b.add(km[27]), c, d, a, 20);
+            a = gg(a.add(km[28]), b, c, d, 5);
+            d = gg(d.add(km[29]), a, b, c, 9);
+            c = gg(c.add(km[30]), d, a, b, 14);
+            b = gg(b.add(km[31]), c, d, a, 20);
+            a = hh(a.add(km[32]).add(m5), b, c, d, 4);
+            d = hh(d.add(km[33]), a, b, c, 11);
+            c = hh(c.add(km[34]), d, a, b, 16);
+            b = hh(b.add(km[35]), c, d, a, 23);
+            a = hh(a.add(km[36]), b, c, d, 4);
+            d = hh(d.add(km[37]).add(m4), a, b, c, 11);
+            c = hh(c.add(km[38]), d, a, b, 16);
+            b = hh(b.add(km[39]), c, d, a, 23);
+            a = hh(a.add(km[40]), b, c, d, 4);
+            d = hh(d.add(km[41]), a, b, c, 11);
+            c = hh(c.add(km[42]), d, a, b, 16);
+            b = hh(b.add(km[43]), c, d, a, 23);
+            a = hh(a.add(km[44]), b, c, d, 4);
+            d = hh(d.add(km[45]), a, b, c, 11);
+            c = hh(c.add(km[46]), d, a, b, 16);
+            b = hh(b.add(km[47]), c, d, a, 23);
+            a = ii(a.add(km[48]), b, c, d, 6);
+            d = ii(d.add(km[49]), a, b, c, 10);
+            c = ii(c.add(km[50]), d, a, b, 15);
+            b = ii(b.add(km[51]).add(m5), c, d, a, 21);
+            a = ii(a.add(km[52]), b, c, d, 6);
+            d = ii(d.add(km[53]), a, b, c, 10);
+            c = ii(c.add(km[54]), d, a, b, 15);
+            b = ii(b.add(km[55]), c, d, a, 21);
+            a = ii(a.add(km[56]), b, c, d, 6);
+            d = ii(d.add(km[57]), a, b, c, 10);
+            c = ii(c.add(km[58]), d, a, b, 15);
+            b = ii(b.add(km[59]), c, d, a, 21);
+            a = ii(a.add(km[60]).add(m4), b, c, d, 6);
+            d = ii(d.add(km[61]), a, b, c, 10);
+            VectorMask<Integer> hit = d.add(0x10325476).and(maskD).eq(0);
+            if (hit.anyTrue()) {
+                for (int lane = hit.firstTrue(); lane < lanes; lane++) {
+                    if (hit.laneIsSet(lane) && scalar.checkPuzzle(startPuzzle + i + lane, nZeros)) {
+                        return i + lane;
+                    }
+                }
+            }
+        }
+        // tail - less than a full vector
+        for (; i < count; i++) {
+            if (scalar.checkPuzzle(startPuzzle + i, nZeros)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static IntVector ff(IntVector x, IntVector b, IntVector c, IntVector d, int s) {
+        return b.add(x.add(b.and(c).or(b.not().and(d))).lanewise(VectorOperators.ROL, s));
+    }
+
+    private static IntVector gg(IntVector x, IntVector b, IntVector c, IntVector d, int s) {
+        return b.add(x.add(b.and(d).or(c.and(d.not()))).lanewise(VectorOperators.ROL, s));
+    }
+
+    private static IntVector hh(IntVector x, IntVector b, IntVector c, IntVector d, int s) {
+        return b.add(x.add(b.lanewise(VectorOperators.XOR, c).lanewise(VectorOperators.XOR, d)).lanewise(VectorOperators.ROL, s));
+    }
+
+    private static IntVector ii(IntVector x, IntVector b, IntVector c, IntVector d, int s) {
+        return b.add(x.add(c.lanewise(VectorOperators.XOR, b.or(d.not()))).lanewise(VectorOperators.ROL, s));
+    }
+}
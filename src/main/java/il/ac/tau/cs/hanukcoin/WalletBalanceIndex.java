@@ -0,0 +1,149 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coins per wallet (number of blocks in the chain), kept up to date as the chain changes -
+ * so balance and leaderboard queries do not scan the chain.
+ * Balances are in an IntIntHashMap (no boxing). The K richest wallets are kept sorted in two arrays:
+ * a new block moves its wallet up at most a few places - O(K). A removed block (reorg) may let a wallet
+ * from outside the top K in - the top K is then rebuilt on the next query. Reorgs are rare.
+ */
+public class WalletBalanceIndex implements BlockChain.ChainListener {
+    /**
+     * One leaderboard line
+     */
+    public record Entry(int wallet, int coins) {
+    }
+
+    private final IntIntHashMap balances = new IntIntHashMap(1024);
+    private final int k;
+    private final int[] topWallets;
+    private final int[] topCoins;
+    private int topSize = 0;
+    private boolean topDirty = false;
+
+    /**
+     * @param k - leaderboard size
+     */
+    public WalletBalanceIndex(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        this.k = k;
+        topWallets = new int[k];
+        topCoins = new int[k];
+    }
+
+    /**
+     * Create an index of the blocks already in chain and keep it updated
+     */
+    public static WalletBalanceIndex attach(BlockChain chain, int k) {
+        WalletBalanceIndex index = new WalletBalanceIndex(k);
+        synchronized (chain) {  // no change between the scan and addListener
+            Block view = Block.createEmpty();
+            for (int i = 0; i < chain.size(); i++) {
+                index.blockAppended(chain.view(i, view));
+            }
+            chain.addListener(index);
+        }
+        return index;
+    }
+
+    public synchronized int getBalance(int wallet) {
+        return balances.get(wallet, 0);
+    }
+
+    /**
+     * @return number of wallets with at least one coin
+     */
+    public synchronized int getWalletsCount() {
+        return balances.size();
+    }
+
+    /**
+     * @return up to K richest wallets, richest first (on equal coins - smaller wallet number first)
+     */
+    public synchronized List<Entry> top() {
+        if (topDirty) {
+            rebuildTop();
+        }
+        ArrayList<Entry> result = new ArrayList<>(topSize);
+        for (int i = 0; i < topSize; i++) {
+            result.add(new Entry(topWallets[i], topCoins[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public void tipChanged(Block newTip) {
+    }
+
+    @Override
+    public synchronized void blockAppended(Block b) {
+        int wallet = b.getWalletNumber();
+        int coins = balances.addTo(wallet, 1);
+        if (!topDirty) {
+            offer(wallet, coins);
+        }
+    }
+
+    @Override
+    public synchronized void blockRemoved(Block b) {
+        int wallet = b.getWalletNumber();
+        int coins = balances.addTo(wallet, -1);
+        if (coins <= 0) {
+            balances.remove(wallet);
+        }
+        if (!topDirty && indexOfTop(wallet) >= 0) {
+            topDirty = true;  // cheaper to rebuild once on query than after every removed block
+        }
+    }
+
+    private static boolean richer(int coins1, int wallet1, int coins2, int wallet2) {
+        return coins1 != coins2 ? coins1 > coins2 : wallet1 < wallet2;
+    }
+
+    private int indexOfTop(int wallet) {
+        for (int i = 0; i < topSize; i++) {
+            if (topWallets[i] == wallet) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * wallet now has coins (more than before) - move it up, or into the top if it beats the last one
+     */
+    private void offer(int wallet, int coins) {
+        int i = indexOfTop(wallet);
+        if (i < 0) {
+            if (topSize < k) {
+                i = topSize++;
+            } else if (richer(coins, wallet, topCoins[k - 1], topWallets[k - 1])) {
+                i = k - 1;  // the last one drops out
+            } else {
+                return;
+            }
+            topWallets[i] = wallet;
+        }
+        topCoins[i] = coins;
+        for (; i > 0 && richer(coins, wallet, topCoins[i - 1], topWallets[i - 1]); i--) {
+            topWallets[i] = topWallets[i - 1];
+            topCoins[i] = topCoins[i - 1];
+            topWallets[i - 1] = wallet;
+            topCoins[i - 1] = coins;
+        }
+    }
+
+    private void rebuildTop() {
+        topSize = 0;
+        balances.forEach((wallet, coins) -> {
+            offer(wallet, coins);
+            return 0;
+        });
+        topDirty = false;
+    }
+}
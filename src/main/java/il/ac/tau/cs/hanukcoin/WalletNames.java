@@ -0,0 +1,175 @@
+package il.ac.tau.cs.hanukcoin;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reverse of HanukCoinUtils.walletCode() - wallet number -> team name.
+ * Names come from NodeInfo.name of nodes we hear about in gossip and from dictionary files (one name per line).
+ * The MD5 for a new name is done on one background thread - callers only queue the name.
+ * Lookups never hash. The map is saved to a text file (wallet in hex, tab, name) and loaded on start.
+ * Dictionary files can also be given in system property hanukcoin.names - paths separated by File.pathSeparator.
+ */
+public class WalletNames {
+    private final ConcurrentHashMap<Integer, String> names = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();  // names already queued - hash each once
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wallet-names");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Path file;
+    private boolean changed = false;  // new names since the last save - background thread only
+    static final String DICTIONARIES_PROPERTY = "hanukcoin.names";
+
+    /**
+     * In-memory only - nothing is saved
+     */
+    public WalletNames() {
+        this.file = null;
+        addDictionariesFromProperty();
+    }
+
+    /**
+     * @param file - where the map is saved, loaded now if it exists
+     */
+    public WalletNames(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab <= 0) {
+                    continue;
+                }
+                String name = line.substring(tab + 1);
+                try {
+                    names.put(Integer.parseUnsignedInt(line.substring(0, tab), 16), name);
+                    seen.add(name);
+                } catch (NumberFormatException e) {
+                    // hand edited or corrupt line - skip it, the name is hashed again if seen
+                }
+            }
+        }
+        addDictionariesFromProperty();
+    }
+
+    private void addDictionariesFromProperty() {
+        String dictionaries = System.getProperty(DICTIONARIES_PROPERTY);
+        if (dictionaries != null) {
+            for (String d : dictionaries.split(File.pathSeparator)) {
+                addDictionary(Paths.get(d));
+            }
+        }
+    }
+
+    /**
+     * @return team name of wallet OR null if not known
+     */
+    public String nameOf(int wallet) {
+        return names.get(wallet);
+    }
+
+    /**
+     * @return team name of wallet, or its number in hex if not known
+     */
+    public String format(int wallet) {
+        String name = names.get(wallet);
+        return name != null ? name : String.format("0x%08x", wallet);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Queue a name to be hashed - cheap, can be called on the network path
+     */
+    public void observe(String name) {
+        if (name == null || name.isEmpty() || name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0) {
+            return;  // would break the file format - not a real team name anyway
+        }
+        if (seen.add(name)) {
+            executor.execute(() -> add(name));
+        }
+    }
+
+    public void observeNodes(List<ShowChain3.NodeInfo> nodes) {
+        for (ShowChain3.NodeInfo n : nodes) {
+            observe(n.name);
+        }
+    }
+
+    /**
+     * Queue all names in a dictionary file - one per line. Read on the background thread too.
+     */
+    public void addDictionary(Path dictionary) {
+        executor.execute(() -> {
+            try {
+                for (String line : Files.readAllLines(dictionary, StandardCharsets.UTF_8)) {
+                    String name = line.trim();
+                    if (!name.isEmpty() && seen.add(name)) {
+                        add(name);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println(String.format("ERROR reading wallet names dictionary %s:\n  %s", dictionary, e));
+            }
+        });
+    }
+
+    private void add(String name) {
+        if (names.putIfAbsent(HanukCoinUtils.walletCode(name), name) == null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Save the map after everything queued so far is hashed - only if there are new names
+     * @return done when saved - get() to wait
+     */
+    public Future<?> flush() {
+        return executor.submit(() -> {
+            if (file != null && changed) {
+                try {
+                    save();
+                    changed = false;
+                } catch (IOException e) {
+                    System.out.println(String.format("ERROR saving wallet names:\n  %s", e));
+                }
+            }
+        });
+    }
+
+    private void save() throws IOException {
+        List<String> lines = new ArrayList<>(names.size());
+        for (Map.Entry<Integer, String> e : names.entrySet()) {
+            lines.add(String.format("%08x\t%s", e.getKey(), e.getValue()));
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                w.write(line);
+                w.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
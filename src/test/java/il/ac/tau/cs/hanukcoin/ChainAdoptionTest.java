@@ -0,0 +1,67 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class ChainAdoptionTest extends TestCase {
+    static final int WALLET_A = HanukCoinUtils.walletCode("TEST_A");
+    static final int WALLET_B = HanukCoinUtils.walletCode("TEST_B");
+
+    static Block mineNext(Block prev, int wallet) {
+        Block b = null;
+        while (b == null) {
+            b = HanukCoinUtils.mineCoinAttempt(wallet, prev, 10000000);
+        }
+        return b;
+    }
+
+    @org.junit.Test
+    public void test_adoptAfterForkPoint() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = mineNext(genesis, WALLET_A);
+        Block a2 = mineNext(a1, WALLET_B);
+        BlockChain chain = new BlockChain(genesis);
+        assertEquals(chain.append(a1), Block.BlockError.OK);
+        assertEquals(chain.append(a2), Block.BlockError.OK);
+
+        Block b2 = mineNext(a1, WALLET_B);
+        Block b3 = mineNext(b2, WALLET_A);
+        List<Block> theirs = Arrays.asList(genesis.clone(), a1.clone(), b2, b3);
+        ChainAdoption adoption = new ChainAdoption(chain);
+        assertEquals(adoption.findForkPoint(theirs), 1);
+
+        // same chain - nothing to validate
+        ChainAdoption.Result same = adoption.adopt(Arrays.asList(genesis, a1, a2));
+        assertFalse(same.adopted());
+        assertEquals(same.validated(), 0);
+
+        // corrupt last block - rejected with its index
+        Block bad = b3.clone();
+        bad.getBytes()[30] ^= 1;
+        ChainAdoption.Result rejected = adoption.adopt(Arrays.asList(genesis, a1, b2, bad));
+        assertFalse(rejected.adopted());
+        assertEquals(rejected.badIndex(), 3);
+        assertEquals(chain.size(), 3);
+
+        ChainAdoption.Result result = adoption.adopt(theirs);
+        assertTrue(result.adopted());
+        assertEquals(result.forkPoint(), 1);
+        assertEquals(result.validated(), 2);  // only b2, b3 were hashed
+        assertEquals(chain.size(), 4);
+        assertTrue(chain.getTip().equals(b3));
+        assertEquals(chain.findBySigPrefix(a2.getSigPrefix()), -1);  // a2 left the index
+        assertEquals(chain.findBySigPrefix(b2.getSigPrefix()), 2);
+
+        // other genesis - no fork point
+        List<Block> other = new ArrayList<>(theirs);
+        Block otherGenesis = genesis.clone();
+        otherGenesis.getBytes()[35] ^= 1;
+        other.set(0, otherGenesis);
+        assertEquals(adoption.findForkPoint(other.subList(0, 1)), -1);
+    }
+}
@@ -0,0 +1,138 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+
+public class ChainEventBusTest extends TestCase {
+    /**
+     * Collects events - requests nothing until told to
+     */
+    static class Collector implements Flow.Subscriber<ChainEventBus.ChainEvent> {
+        final List<ChainEventBus.ChainEvent> events = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed = false;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ChainEventBus.ChainEvent item) {
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static ChainEventBus.NodeAdded node(String name) {
+        ShowChain3.NodeInfo n = new ShowChain3.NodeInfo();
+        n.name = name;
+        return new ChainEventBus.NodeAdded(n);
+    }
+
+    private static List<String> names(List<ChainEventBus.ChainEvent> events) {
+        List<String> names = new ArrayList<>();
+        for (ChainEventBus.ChainEvent e : events) {
+            names.add(((ChainEventBus.NodeAdded) e).node().name);
+        }
+        return names;
+    }
+
+    @org.junit.Test
+    public void test_policies() {
+        ChainEventBus bus = new ChainEventBus(Runnable::run, 16, ChainEventBus.Policy.COALESCE);  // deliver inline
+        Collector newest = new Collector();
+        Collector oldest = new Collector();
+        ChainEventBus.BusSubscription sNewest = bus.subscribe(newest, 3, ChainEventBus.Policy.DROP_NEWEST);
+        ChainEventBus.BusSubscription sOldest = bus.subscribe(oldest, 3, ChainEventBus.Policy.DROP_OLDEST);
+        for (String name : Arrays.asList("a", "b", "c", "d", "e")) {
+            bus.publish(node(name));  // nobody requested - all buffered or dropped, publish does not wait
+        }
+        assertEquals(sNewest.getDroppedCount(), 2);
+        assertEquals(sOldest.getDroppedCount(), 2);
+        newest.subscription.request(10);
+        oldest.subscription.request(2);
+        assertEquals(names(newest.events), Arrays.asList("a", "b", "c"));
+        assertEquals(names(oldest.events), Arrays.asList("c", "d"));
+        oldest.subscription.request(1);
+        assertEquals(names(oldest.events), Arrays.asList("c", "d", "e"));
+
+        bus.close();
+        assertTrue(newest.completed);
+        assertEquals(bus.getSubscribersCount(), 0);
+    }
+
+    @org.junit.Test
+    public void test_coalesceTip() {
+        ChainEventBus bus = new ChainEventBus(Runnable::run, 4, ChainEventBus.Policy.COALESCE);
+        Collector slow = new Collector();
+        bus.subscribe(slow);
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        bus.publish(node("x"));
+        for (int i = 1; i <= 10; i++) {
+            bus.publish(new ChainEventBus.TipChanged(genesis, i));
+        }
+        slow.subscription.request(Long.MAX_VALUE);
+        assertEquals(slow.events.size(), 2);  // the node and only the latest tip
+        assertEquals(((ChainEventBus.TipChanged) slow.events.get(1)).height(), 10);
+    }
+
+    @org.junit.Test
+    public void test_chainEvents() {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(6);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        chain.replace(blocks.subList(0, 5));
+        ChainEventBus bus = new ChainEventBus(Runnable::run, 16, ChainEventBus.Policy.DROP_OLDEST);
+        bus.attach(chain);
+        Collector c = new Collector();
+        bus.subscribe(c);
+        c.subscription.request(Long.MAX_VALUE);
+
+        // fork after block 2 - different wallets for 3, 4, 5
+        List<Block> fork = new ArrayList<>(blocks.subList(0, 3));
+        for (int i = 3; i < 6; i++) {
+            Block prev = fork.get(i - 1);
+            byte[] prevSig = new byte[8];
+            System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+            Block b = Block.createNoSig(i, 100 + i, prevSig);
+            b.setSignaturePart(b.calcSignature());
+            fork.add(b);
+        }
+        assertTrue(chain.replaceSuffix(2, blocks.get(2), fork.subList(3, 6)));
+        assertEquals(c.events.size(), 2);
+        assertEquals(c.events.get(0), new ChainEventBus.Reorg(2, 2, 3));
+        ChainEventBus.TipChanged tip = (ChainEventBus.TipChanged) c.events.get(1);
+        assertEquals(tip.height(), 6);
+        assertTrue(tip.tip().equals(fork.get(5)));
+    }
+
+    @org.junit.Test
+    public void test_chainChangeAfterClose() {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(3);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        ChainEventBus bus = new ChainEventBus(Runnable::run, 16, ChainEventBus.Policy.DROP_OLDEST);
+        bus.attach(chain);
+        List<Block> tips = new ArrayList<>();
+        chain.addListener(tips::add);  // registered after the bus
+        chain.replace(blocks.subList(0, 2));
+        bus.close();
+        chain.replace(blocks);  // must not throw
+        assertEquals(tips.size(), 2);
+        assertEquals(chain.size(), 3);
+        bus.publish(new ChainEventBus.TipChanged(blocks.get(2), 3));  // ignored
+    }
+}
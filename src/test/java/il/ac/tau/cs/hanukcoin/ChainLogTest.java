@@ -0,0 +1,178 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class ChainLogTest extends TestCase {
+    private static void checkSame(ChainLog log, List<Block> expected) {
+        assertEquals(log.size(), expected.size());
+        Block view = Block.createEmpty();
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(log.read(i, view).equals(expected.get(i)));
+        }
+    }
+
+    @org.junit.Test
+    public void test_appendReopen() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(5000);  // more than GROW_BLOCKS - remap
+        try (ChainLog log = ChainLog.open(file)) {
+            assertEquals(log.size(), 0);
+            for (Block b : blocks) {
+                log.append(b);
+            }
+        }
+        try (ChainLog log = ChainLog.open(file)) {
+            assertFalse(log.recovered());
+            checkSame(log, blocks);
+            BlockChain chain = log.loadChain(false);
+            assertEquals(chain.size(), blocks.size());
+            assertTrue(chain.getTip().equals(blocks.get(blocks.size() - 1)));
+            assertEquals(chain.findBySigPrefix(blocks.get(1234).getSigPrefix()), 1234);
+        }
+        Files.delete(file);
+    }
+
+    @org.junit.Test
+    public void test_persistReorg() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(20);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        chain.replace(blocks);
+        try (ChainLog log = ChainLog.open(file)) {
+            log.persist(chain);
+            checkSame(log, blocks);
+            // fork after block 9 - different wallet for block 10
+            List<Block> fork = blocks.subList(0, 10);
+            Block prev = fork.get(9);
+            byte[] prevSig = new byte[8];
+            System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+            Block b10 = Block.createNoSig(10, 77, prevSig);
+            b10.setSignaturePart(b10.calcSignature());
+            List<Block> forked = new java.util.ArrayList<>(fork);
+            forked.add(b10);
+            chain.replace(forked);
+            log.persist(chain);
+            checkSame(log, forked);
+        }
+        Files.delete(file);
+    }
+
+    private static List<Block> mined;
+
+    /**
+     * @return genesis and 4 really mined blocks - recovery checks signatures so synthetic ones will not do
+     */
+    private static synchronized List<Block> minedChain() {
+        if (mined == null) {
+            mined = new ArrayList<>();
+            mined.add(HanukCoinUtils.createBlock0forTestStage());
+            for (int i = 1; i <= 4; i++) {
+                mined.add(ChainAdoptionTest.mineNext(mined.get(i - 1),
+                        i % 2 == 1 ? ChainAdoptionTest.WALLET_A : ChainAdoptionTest.WALLET_B));
+            }
+        }
+        return mined;
+    }
+
+    @org.junit.Test
+    public void test_recoverTornTail() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        List<Block> blocks = minedChain();
+        try (ChainLog log = ChainLog.open(file)) {
+            for (Block b : blocks) {
+                log.append(b);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // corrupt prevSig of record 4 - as if a crash tore the write
+            raf.seek(ChainLog.HEADER_SZ + 4 * Block.BLOCK_SZ + 8);
+            raf.writeLong(-1L);
+            raf.seek(16);
+            raf.writeInt(123);  // bad count - header CRC no longer matches
+        }
+        try (ChainLog log = ChainLog.open(file)) {
+            assertTrue(log.recovered());
+            checkSame(log, blocks.subList(0, 4));
+        }
+        Files.delete(file);
+    }
+
+    @org.junit.Test
+    public void test_recoverTornPuzzle() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        List<Block> blocks = minedChain();
+        try (ChainLog log = ChainLog.open(file)) {
+            for (Block b : blocks) {
+                log.append(b);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            // torn puzzle of record 3 - linkage still holds, only the signature check catches it
+            raf.seek(ChainLog.HEADER_SZ + 3 * Block.BLOCK_SZ + 16);
+            raf.writeLong(0L);
+            raf.seek(16);
+            raf.writeInt(123);
+        }
+        try (ChainLog log = ChainLog.open(file)) {
+            assertTrue(log.recovered());
+            checkSame(log, blocks.subList(0, 3));
+            BlockChain chain = log.loadChain(false);
+            assertEquals(chain.size(), 3);
+        }
+        Files.delete(file);
+    }
+
+    @org.junit.Test
+    public void test_crashAfterTruncate() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        List<Block> blocks = minedChain();
+        try (ChainLog log = ChainLog.open(file)) {
+            for (Block b : blocks) {
+                log.append(b);
+            }
+            log.truncate(3);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(16);
+            raf.writeInt(5);  // as if the crash came before the new header - header CRC no longer matches
+        }
+        try (ChainLog log = ChainLog.open(file)) {
+            assertTrue(log.recovered());
+            checkSame(log, blocks.subList(0, 3));  // truncated blocks do not come back
+            log.truncate(0);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(16);
+            raf.writeInt(5);
+        }
+        try (ChainLog log = ChainLog.open(file)) {
+            assertEquals(log.size(), 0);
+        }
+        Files.delete(file);
+    }
+
+    @org.junit.Test
+    public void test_foreignFile() throws Exception {
+        Path file = Files.createTempFile("chain", ".log");
+        byte[] content = "not a chain log - some other file we must not overwrite".getBytes();
+        Files.write(file, content);
+        try {
+            ChainLog.open(file);
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(Arrays.equals(Files.readAllBytes(file), content));
+        Files.delete(file);
+    }
+}
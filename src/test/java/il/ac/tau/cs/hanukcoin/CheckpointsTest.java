@@ -0,0 +1,85 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class CheckpointsTest extends TestCase {
+    @org.junit.Test
+    public void test_skipBelowCheckpoint() throws Exception {
+        // linked, but signatures without the zeros - every block fails checkSignature()
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(100);
+        assertEquals(new ParallelChainValidator().validate(blocks).index(), 1);
+
+        Checkpoints checkpoints = new Checkpoints(Arrays.asList(
+                Checkpoints.Checkpoint.of(blocks.get(20)),
+                Checkpoints.Checkpoint.of(blocks.get(50)),
+                new Checkpoints.Checkpoint(80, 12345L)));  // not our block 80 - ignored
+        assertEquals(checkpoints.highestMatching(blocks), 50);
+        assertEquals(checkpoints.highestMatching(blocks.subList(30, 60)), 20);  // serial 50 is index 20
+        assertEquals(checkpoints.highestMatching(blocks.subList(60, 100)), -1);
+
+        ParallelChainValidator validator = new ParallelChainValidator(checkpoints);
+        ParallelChainValidator.Result r = validator.validateLocal(blocks);
+        assertEquals(r.index(), 51);
+        assertEquals(r.error(), Block.BlockError.SIG_NO_ZEROS);
+        // the audit ignores checkpoints
+        assertEquals(validator.audit(blocks).get().index(), 1);
+
+        // linkage is still checked below the checkpoint
+        List<Block> broken = ParallelChainValidatorTest.linkedChain(100);
+        broken.set(10, broken.get(11));
+        assertEquals(validator.validateLocal(broken).index(), 10);
+    }
+
+    @org.junit.Test
+    public void test_peerChainIgnoresCheckpoint() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        Block a2 = ChainAdoptionTest.mineNext(a1, ChainAdoptionTest.WALLET_B);
+        // a peer copies the signatures but changes the wallet below the checkpoint - linkage still holds
+        Block forged = a1.clone();
+        System.arraycopy(Block.createNoSig(1, HanukCoinUtils.walletCode("THIEF"), new byte[8]).getBytes(), 4,
+                forged.getBytes(), 4, 4);
+        List<Block> blocks = Arrays.asList(genesis, forged, a2);
+        ParallelChainValidator validator = new ParallelChainValidator(
+                new Checkpoints(Arrays.asList(Checkpoints.Checkpoint.of(a2))));
+        assertTrue(validator.validateLocal(blocks).isOk());  // why the skip is for our own storage only
+        ParallelChainValidator.Result r = validator.validate(blocks, 1);
+        assertEquals(r.index(), 1);
+        assertTrue(r.error() != Block.BlockError.OK);
+    }
+
+    @org.junit.Test
+    public void test_loadFileAndChain() throws Exception {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(30);
+        Block last = blocks.get(29);
+        Path file = Files.createTempFile("checkpoints", ".txt");
+        Files.write(file, Arrays.asList("# serial sigPrefix",
+                String.format("%d %016x  # tip", last.getSerialNumber(), last.getSigPrefix())));
+        Checkpoints checkpoints = Checkpoints.load(file);
+        assertEquals(checkpoints.size(), 1);
+
+        BlockChain chain = new BlockChain(blocks.get(0));
+        chain.replace(blocks);
+        Path chainFile = Files.createTempFile("chain", ".hcc");
+        CompactChainCodec.save(chainFile, chain);
+        try {
+            CompactChainCodec.loadChain(chainFile, new ParallelChainValidator());
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected - no checkpoint, signatures are checked
+        }
+        BlockChain loaded = CompactChainCodec.loadChain(chainFile, new ParallelChainValidator(checkpoints));
+        assertEquals(loaded.size(), 30);
+        assertTrue(loaded.getTip().equals(last));
+        Files.delete(file);
+        Files.delete(chainFile);
+    }
+}
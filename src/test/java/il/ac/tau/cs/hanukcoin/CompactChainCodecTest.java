@@ -0,0 +1,126 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+
+public class CompactChainCodecTest extends TestCase {
+    private static void checkSame(List<Block> actual, List<Block> expected) {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(actual.get(i).equals(expected.get(i)));
+        }
+    }
+
+    @org.junit.Test
+    public void test_roundTrip() throws Exception {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(1000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CompactChainCodec.write(new DataOutputStream(bos), blocks);
+        // 3 wallets - one byte index + 20 bytes per block
+        assertTrue(bos.size() < blocks.size() * 22);
+        checkSame(CompactChainCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray()))), blocks);
+
+        // a suffix starts at its own serial number
+        List<Block> suffix = blocks.subList(500, 1000);
+        bos.reset();
+        CompactChainCodec.write(new DataOutputStream(bos), suffix);
+        checkSame(CompactChainCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray()))), suffix);
+
+        bos.reset();
+        CompactChainCodec.write(new DataOutputStream(bos), blocks.subList(0, 0));
+        assertEquals(CompactChainCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray()))).size(), 0);
+    }
+
+    @org.junit.Test
+    public void test_notLinked() throws Exception {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(10);
+        blocks.remove(5);
+        try {
+            CompactChainCodec.write(new DataOutputStream(new ByteArrayOutputStream()), blocks);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @org.junit.Test
+    public void test_varInt() throws Exception {
+        int[] values = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, -1};
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int v : values) {
+            CompactChainCodec.writeVarInt(dos, v);
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        for (int v : values) {
+            assertEquals(CompactChainCodec.readVarInt(dis), v);
+        }
+    }
+
+    @org.junit.Test
+    public void test_file() throws Exception {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(100);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        chain.replace(blocks);
+        Path file = Files.createTempFile("chain", ".hcc");
+        CompactChainCodec.save(file, chain);
+        checkSame(CompactChainCodec.load(file), blocks);
+        Files.delete(file);
+    }
+
+    @org.junit.Test
+    public void test_hugeCounts() throws Exception {
+        // counts from a peer, with no blocks after them - must fail on the count or on EOF, not allocate
+        int[][] headers = {{Integer.MAX_VALUE}, {FrameDecoder.MAX_COUNT, 0, 0, 0, 0, 0, 0, 0, 0, 0, FrameDecoder.MAX_COUNT}};
+        for (int[] header : headers) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bos);
+            for (int v : header) {
+                dos.writeInt(v);  // count, then the first block (9 ints = 36 bytes), then the wallets count
+            }
+            try {
+                CompactChainCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+                fail("expected IOException");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void test_badVarInt() throws Exception {
+        try {
+            CompactChainCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(
+                    new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x10})));
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        // a negative wallet index - 0xFF 0xFF 0xFF 0xFF 0x0F is -1
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(2);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(2);
+        blocks.get(0).writeTo(dos);
+        dos.writeInt(1);
+        dos.writeInt(blocks.get(1).getWalletNumber());
+        dos.write(new byte[]{(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f});
+        dos.write(blocks.get(1).getBytes(), 16, Block.BLOCK_SZ - 16);
+        try {
+            CompactChainCodec.read(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class DeltaSyncTest extends TestCase {
+    static final HostPort PEER = new HostPort("127.0.0.1", 8080);
+
+    interface Server {
+        void serve(DataInputStream dis, DataOutputStream dos) throws IOException;
+    }
+
+    /**
+     * Run one client exchange against server over in-memory pipes
+     */
+    static DeltaSync.Result exchange(DeltaSync client, Server server) throws Exception {
+        PipedOutputStream toServer = new PipedOutputStream();
+        PipedInputStream serverIn = new PipedInputStream(toServer, 1 << 16);
+        PipedOutputStream toClient = new PipedOutputStream();
+        PipedInputStream clientIn = new PipedInputStream(toClient, 1 << 16);
+        Thread t = new Thread(() -> {
+            try {
+                server.serve(new DataInputStream(serverIn), new DataOutputStream(toClient));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        t.start();
+        DeltaSync.Result result = client.exchange(PEER, new DataInputStream(clientIn), new DataOutputStream(toServer),
+                new ArrayList<>());
+        t.join();
+        return result;
+    }
+
+    @org.junit.Test
+    public void test_locatorSerials() {
+        assertEquals(DeltaSync.locatorSerials(1), Arrays.asList(0));
+        assertEquals(DeltaSync.locatorSerials(2), Arrays.asList(1, 0));
+        assertEquals(DeltaSync.locatorSerials(10), Arrays.asList(9, 8, 7, 5, 1, 0));
+    }
+
+    @org.junit.Test
+    public void test_deltaExchange() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        Block a2 = ChainAdoptionTest.mineNext(a1, ChainAdoptionTest.WALLET_B);
+        BlockChain serverChain = new BlockChain(genesis);
+        serverChain.append(a1);
+        serverChain.append(a2);
+        DeltaSync serverSync = new DeltaSync(serverChain);
+        BlockChain clientChain = new BlockChain(genesis);
+        clientChain.append(a1);
+        DeltaSync clientSync = new DeltaSync(clientChain);
+
+        DeltaSync.Result r = exchange(clientSync, (dis, dos) -> serverSync.serve(dis, dos, new ArrayList<>()));
+        assertTrue(r.delta());
+        assertEquals(r.blocksReceived(), 1);  // only a2 - not the whole chain
+        assertTrue(r.adopted());
+        assertEquals(clientChain.size(), 3);
+        assertTrue(clientChain.getTip().equals(a2));
+
+        assertTrue(clientSync.supportsCompact(PEER));  // our server answers cmd=5 with cmd=6
+
+        // now in sync - nothing to send
+        r = exchange(clientSync, (dis, dos) -> serverSync.serve(dis, dos, new ArrayList<>()));
+        assertTrue(r.delta());
+        assertEquals(r.blocksReceived(), 0);
+        assertFalse(r.adopted());
+    }
+
+    @org.junit.Test
+    public void test_classicFallback() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        BlockChain serverChain = new BlockChain(genesis);
+        serverChain.append(a1);
+        BlockChain clientChain = new BlockChain(genesis);
+        DeltaSync clientSync = new DeltaSync(clientChain);
+        AtomicInteger lastCmd = new AtomicInteger();
+        // a classic peer - answers any request with its full chain in cmd=2
+        Server classic = (dis, dos) -> {
+            StreamingChainDecoder.Decoded d = new StreamingChainDecoder(serverChain).decode(dis);
+            lastCmd.set(d.cmd);
+            dos.writeInt(DeltaSync.CMD_RESPONSE);
+            dos.writeInt(ShowChain3.BEEF_BEEF);
+            dos.writeInt(0);
+            dos.writeInt(ShowChain3.DEAD_DEAD);
+            dos.writeInt(serverChain.size());
+            serverChain.writeBlocks(dos);
+            dos.flush();
+        };
+
+        assertTrue(clientSync.supportsDelta(PEER));
+        DeltaSync.Result r = exchange(clientSync, classic);
+        assertEquals(lastCmd.get(), DeltaSync.CMD_COMPACT_REQUEST);
+        assertFalse(r.delta());
+        assertTrue(r.adopted());
+        assertEquals(clientChain.size(), 2);
+        assertFalse(clientSync.supportsDelta(PEER));
+
+        exchange(clientSync, classic);
+        assertEquals(lastCmd.get(), DeltaSync.CMD_REQUEST);
+    }
+
+    @org.junit.Test
+    public void test_downgradeOnlyOnEof() throws Exception {
+        DeltaSync clientSync = new DeltaSync(new BlockChain(HanukCoinUtils.createBlock0forTestStage()));
+        DataOutputStream sink = new DataOutputStream(new ByteArrayOutputStream());
+        // connection reset while waiting for the reply - may be transient, keep the level
+        InputStream reset = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+        try {
+            clientSync.exchange(PEER, new DataInputStream(reset), sink, new ArrayList<>());
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(clientSync.supportsCompact(PEER));
+        // closed right after the request - did not know the cmd
+        try {
+            clientSync.exchange(PEER, new DataInputStream(new ByteArrayInputStream(new byte[0])), sink,
+                    new ArrayList<>());
+            fail("expected EOFException");
+        } catch (EOFException e) {
+            // expected
+        }
+        assertFalse(clientSync.supportsDelta(PEER));
+    }
+
+    @org.junit.Test
+    public void test_badLocatorSerial() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        BlockChain serverChain = new BlockChain(genesis);
+        DeltaSync serverSync = new DeltaSync(serverChain);
+        for (int serial : new int[]{-5, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(request);
+            dos.writeInt(DeltaSync.CMD_DELTA_REQUEST);
+            dos.writeInt(ShowChain3.BEEF_BEEF);
+            dos.writeInt(0);
+            dos.writeInt(ShowChain3.DEAD_DEAD);
+            dos.writeInt(2);
+            Block.createNoSig(serial, 1, new byte[8]).writeTo(dos);  // tip
+            Block.createNoSig(serial, 1, new byte[8]).writeTo(dos);  // locator
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            serverSync.serve(new DataInputStream(new ByteArrayInputStream(request.toByteArray())),
+                    new DataOutputStream(reply), new ArrayList<>());
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(reply.toByteArray()));
+            assertEquals(dis.readInt(), DeltaSync.CMD_DELTA_RESPONSE);
+        }
+    }
+}
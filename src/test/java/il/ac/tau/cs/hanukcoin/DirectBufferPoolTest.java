@@ -0,0 +1,60 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+
+public class DirectBufferPoolTest extends TestCase {
+    @org.junit.Test
+    public void test_reuse() throws Exception {
+        DirectBufferPool pool = new DirectBufferPool();
+        ByteBuffer a = pool.acquire(100);
+        assertTrue(a.isDirect());
+        assertEquals(a.capacity(), 4096);
+        ByteBuffer b = pool.acquire(5000);
+        assertEquals(b.capacity(), 16 * 1024);
+        a.putInt(7).flip();
+        pool.release(a);
+        pool.release(b);
+        assertEquals(pool.getFreeCount(), 2);
+
+        ByteBuffer again = pool.acquire(4096);
+        assertSame(again, a);
+        assertEquals(again.position(), 0);  // cleared
+        assertEquals(again.limit(), again.capacity());
+        assertEquals(pool.getAllocatedCount(), 2);
+
+        // too big to pool - a one-off buffer, not kept
+        ByteBuffer huge = pool.acquire(5 * 1024 * 1024);
+        assertEquals(huge.capacity(), 5 * 1024 * 1024);
+        pool.release(huge);
+        pool.release(ByteBuffer.allocate(4096));  // heap buffer - ignored
+        assertEquals(pool.getFreeCount(), 1);
+
+        // free lists are per thread
+        int[] otherFree = new int[1];
+        Thread t = new Thread(() -> otherFree[0] = pool.getFreeCount());
+        t.start();
+        t.join();
+        assertEquals(otherFree[0], 0);
+    }
+
+    @org.junit.Test
+    public void test_serverSteadyState() throws Exception {
+        Thread[] thread = new Thread[1];
+        ServerSimpleNonBlocking server = ServerSimpleNonBlockingTest.start(thread, 0);
+        try {
+            assertTrue(ServerSimpleNonBlockingTest.get(server.boundPort, true).contains("I am alive"));
+            long warm = server.buffers.getAllocatedCount();
+            for (int i = 0; i < 20; i++) {
+                assertTrue(ServerSimpleNonBlockingTest.get(server.boundPort, i % 2 == 0).contains("I am alive"));
+            }
+            assertEquals(server.buffers.getAllocatedCount(), warm);  // all from the pool
+        } finally {
+            server.stop();
+            thread[0].join();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class ForkTreeTest extends TestCase {
+    /**
+     * Linked block after prev - no valid signature, the tree and replaceSuffix() do not check
+     */
+    private static Block next(Block prev, int wallet) {
+        byte[] prevSig = new byte[8];
+        System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+        Block b = Block.createNoSig(prev.getSerialNumber() + 1, wallet, prevSig);
+        b.setSignaturePart(b.calcSignature());
+        return b;
+    }
+
+    @org.junit.Test
+    public void test_switchBranches() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = next(genesis, 1);
+        Block a2 = next(a1, 2);
+        Block a3 = next(a2, 1);
+        BlockChain chain = new BlockChain(genesis);
+        chain.replace(Arrays.asList(genesis, a1, a2, a3));
+        ForkTree tree = ForkTree.attach(chain, 100);
+        WalletBalanceIndex balances = WalletBalanceIndex.attach(chain, 3);
+
+        Block b2 = next(a1, 3);
+        Block b3 = next(b2, 1);
+        Block b4 = next(b3, 3);
+        assertTrue(chain.replaceSuffix(1, a1, Arrays.asList(b2, b3, b4)));
+        assertEquals(tree.size(), 2);  // a2, a3 - removed by the reorg
+        assertTrue(tree.contains(a3.getSigPrefix()));
+        List<Block> branch = tree.branch(a3.getSigPrefix());
+        assertEquals(branch.size(), 2);
+        assertTrue(branch.get(0).equals(a2) && branch.get(1).equals(a3));
+        assertFalse(tree.switchTo(a3.getSigPrefix()));  // shorter
+        assertFalse(tree.switchToBest());
+
+        // branch a grows - switch back without receiving a2, a3 again
+        Block a4 = next(a3, 2);
+        Block a5 = next(a4, 1);
+        tree.add(a4);
+        tree.add(a5);
+        assertTrue(tree.switchToBest());
+        assertTrue(chain.getTip().equals(a5));
+        assertEquals(chain.size(), 6);
+        assertFalse(tree.contains(a2.getSigPrefix()));
+        assertTrue(tree.contains(b4.getSigPrefix()));
+        assertEquals(balances.getBalance(2), 2);  // a2, a4 - updated from the switch
+        assertEquals(balances.getBalance(3), 0);
+
+        // not connected - parent not in tree or chain
+        Block orphan = next(next(b4, 1), 3);
+        tree.add(orphan);
+        assertNull(tree.branch(orphan.getSigPrefix()));
+        assertFalse(tree.switchTo(orphan.getSigPrefix()));
+    }
+
+    @org.junit.Test
+    public void test_bounded() {
+        BlockChain chain = new BlockChain(HanukCoinUtils.createBlock0forTestStage());
+        ForkTree tree = ForkTree.attach(chain, 3);
+        List<Block> added = new ArrayList<>();
+        Block prev = chain.getTip();
+        for (int i = 0; i < 5; i++) {
+            prev = next(prev, i % 2);
+            tree.add(prev);
+            added.add(prev);
+        }
+        tree.add(added.get(2));  // touch - most recently used now
+        tree.add(next(prev, 7));
+        assertEquals(tree.size(), 3);
+        assertTrue(tree.contains(added.get(2).getSigPrefix()));
+        assertFalse(tree.contains(added.get(3).getSigPrefix()));
+    }
+
+    @org.junit.Test
+    public void test_keepLosingBranch() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block x1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        Block y1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_B);
+        // same length - smaller puzzle wins. Ours is the winner, the received one loses
+        Block ours = x1.comparePuzzle(y1) < 0 ? x1 : y1;
+        Block theirs = ours == x1 ? y1 : x1;
+        BlockChain chain = new BlockChain(genesis);
+        chain.append(ours);
+        ForkTree tree = ForkTree.attach(chain, 100);
+        ChainAdoption adoption = new ChainAdoption(chain);
+        adoption.setForkTree(tree);
+
+        ChainAdoption.Result r = adoption.adopt(Arrays.asList(genesis, theirs));
+        assertFalse(r.adopted());
+        assertTrue(tree.contains(theirs.getSigPrefix()));
+
+        int wallet = theirs.getWalletNumber() == ChainAdoptionTest.WALLET_A ? ChainAdoptionTest.WALLET_B : ChainAdoptionTest.WALLET_A;
+        Block next = ChainAdoptionTest.mineNext(theirs, wallet);
+        tree.add(next);
+        assertTrue(tree.switchToBest());
+        assertTrue(chain.getTip().equals(next));
+        assertTrue(tree.contains(ours.getSigPrefix()));
+    }
+
+    @org.junit.Test
+    public void test_losingBranchBudget() {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(5);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        chain.replace(blocks);
+        ForkTree tree = ForkTree.attach(chain, 100, 1);  // one losing block validated per window
+        ChainAdoption adoption = new ChainAdoption(chain);
+        adoption.setForkTree(tree);
+        int validated = 0;
+        for (int wallet = 100; wallet < 110; wallet++) {
+            // shorter than ours - loses. Each fork is a different block after block 2
+            List<Block> fork = new ArrayList<>(blocks.subList(0, 3));
+            byte[] prevSig = new byte[8];
+            System.arraycopy(blocks.get(2).getBytes(), 24, prevSig, 0, 8);
+            Block b = Block.createNoSig(3, wallet, prevSig);
+            b.setSignaturePart(b.calcSignature());
+            fork.add(b);
+            ChainAdoption.Result r = adoption.adopt(fork);
+            assertFalse(r.adopted());
+            validated += r.validated();
+        }
+        assertEquals(validated, 1);
+        assertFalse(tree.reserveValidation(1));
+    }
+}
@@ -0,0 +1,160 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+public class FrameDecoderTest extends TestCase {
+    static byte[] message(List<Block> blocks) throws IOException {
+        return StreamingChainDecoderTest.message(blocks).readAllBytes();  // includes the TRAILER int
+    }
+
+    static void checkFrame(FrameDecoder.Frame f, List<Block> blocks) {
+        assertNotNull(f);
+        assertEquals(f.cmd, 2);
+        assertEquals(f.nodes.size(), 1);
+        assertEquals(f.nodes.get(0).name, "TEST");
+        assertEquals(f.nodes.get(0).host, "127.0.0.1");
+        assertEquals(f.nodes.get(0).port, 8080);
+        assertEquals(f.nodes.get(0).lastSeenTS, 1);
+        assertEquals(f.blocks.size(), blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertTrue(Arrays.equals(f.blocks.get(i).getBytes(), blocks.get(i).getBytes()));
+        }
+    }
+
+    @org.junit.Test
+    public void test_fragments() throws Exception {
+        List<Block> blocks = ParallelChainValidatorTest.linkedChain(20);
+        byte[] msg = message(blocks);
+        int frameLen = msg.length - 4;
+
+        // whole message at once - the trailer is left in the buffer
+        FrameDecoder decoder = new FrameDecoder();
+        ByteBuffer all = ByteBuffer.wrap(msg);
+        checkFrame(decoder.feed(all), blocks);
+        assertEquals(all.remaining(), 4);
+        assertEquals(all.getInt(), StreamingChainDecoderTest.TRAILER);
+        assertFalse(decoder.isPartial());
+
+        // one byte at a time
+        FrameDecoder.Frame f = null;
+        for (int i = 0; i < frameLen; i++) {
+            assertNull(f);
+            f = decoder.feed(ByteBuffer.wrap(msg, i, 1));
+        }
+        checkFrame(f, blocks);
+
+        // random splits
+        Random rand = new Random(1);
+        for (int round = 0; round < 100; round++) {
+            f = null;
+            int pos = 0;
+            while (pos < frameLen) {
+                assertNull(f);
+                int n = Math.min(frameLen - pos, 1 + rand.nextInt(50));
+                f = decoder.feed(ByteBuffer.wrap(msg, pos, n));
+                pos += n;
+            }
+            checkFrame(f, blocks);
+        }
+    }
+
+    @org.junit.Test
+    public void test_badMessage() throws Exception {
+        byte[] msg = message(ParallelChainValidatorTest.linkedChain(2));
+        msg[5] ^= 1;  // BeefBeef
+        FrameDecoder decoder = new FrameDecoder();
+        try {
+            decoder.feed(ByteBuffer.wrap(msg));
+            fail("bad magic accepted");
+        } catch (IOException e) {
+            // expected
+        }
+        decoder.reset();
+        assertFalse(decoder.isPartial());
+    }
+
+    @org.junit.Test
+    public void test_server() throws Exception {
+        Thread[] thread = new Thread[1];
+        ServerSimpleNonBlocking server = ServerSimpleNonBlockingTest.start(thread, 0);
+        try (Socket soc = new Socket("127.0.0.1", server.boundPort)) {
+            byte[] request = {0, 0, 0, 1, (byte) 0xbe, (byte) 0xef, (byte) 0xbe, (byte) 0xef, 0, 0, 0, 0,
+                    (byte) 0xde, (byte) 0xad, (byte) 0xde, (byte) 0xad, 0, 0, 0, 0};
+            OutputStream out = soc.getOutputStream();
+            // split inside the magic - the server must wait for the rest
+            out.write(request, 0, 6);
+            out.flush();
+            Thread.sleep(20);
+            out.write(request, 6, request.length - 6);
+            out.flush();
+            InputStream in = soc.getInputStream();
+            FrameDecoder.Frame f = new FrameDecoder().feed(ByteBuffer.wrap(in.readAllBytes()));
+            assertNotNull(f);
+            assertEquals(f.cmd, 2);
+            assertEquals(f.blocks.size(), 0);  // not mining - no chain
+        } finally {
+            server.stop();
+            thread[0].join();
+        }
+    }
+
+    @org.junit.Test
+    public void test_serverAdopts() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        BlockChain chain = new BlockChain(genesis);
+        Thread[] thread = new Thread[1];
+        ServerSimpleNonBlocking server = ServerSimpleNonBlockingTest.start(thread, 0);
+        server.serveChain(chain);
+        try {
+            // a count over MAX_COUNT - the connection is closed, the reactor keeps going
+            try (Socket soc = new Socket("127.0.0.1", server.boundPort)) {
+                DataOutputStream dos = new DataOutputStream(soc.getOutputStream());
+                dos.writeInt(1);
+                dos.writeInt(ShowChain3.BEEF_BEEF);
+                dos.writeInt(0);
+                dos.writeInt(ShowChain3.DEAD_DEAD);
+                dos.writeInt(Integer.MAX_VALUE);
+                dos.flush();
+                assertEquals(soc.getInputStream().read(), -1);
+            }
+            try (Socket soc = new Socket("127.0.0.1", server.boundPort)) {
+                DataOutputStream dos = new DataOutputStream(soc.getOutputStream());
+                dos.writeInt(1);
+                dos.writeInt(ShowChain3.BEEF_BEEF);
+                dos.writeInt(0);
+                dos.writeInt(ShowChain3.DEAD_DEAD);
+                dos.writeInt(2);
+                genesis.writeTo(dos);
+                a1.writeTo(dos);
+                dos.flush();
+                FrameDecoder.Frame f = new FrameDecoder().feed(ByteBuffer.wrap(soc.getInputStream().readAllBytes()));
+                assertNotNull(f);
+                assertEquals(f.cmd, 2);
+                assertTrue(f.blocks.size() >= 1);  // answered at once - adoption may not be done yet
+                assertTrue(f.blocks.get(0).equals(genesis));
+            }
+            for (int i = 0; i < 500 && chain.size() < 2; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(chain.size(), 2);
+            assertTrue(chain.getTip().equals(a1));
+            assertTrue(ServerSimpleNonBlockingTest.get(server.boundPort, false).contains("I am alive"));
+        } finally {
+            server.stop();
+            thread[0].join();
+        }
+    }
+}
@@ -36,27 +36,7 @@ public class HanukCoinUtilsTest extends TestCase{
         } catch (IOException e) {
             assert(false);
         }
-        // Checking timing - checking if indeed the coice to use the "less Java way" was correct
-        long t1 = System.nanoTime();
-        int i;
-        final int passes = 100000;
-        for (i = 0; i < passes; i++) {
-            assertEquals(HanukCoinUtils.intFromBytes(data, 0), x);
-        }
-        long t2 = System.nanoTime();
-        try {
-            for (i = 0; i < passes; i++) {
-                dis = new DataInputStream(new ByteArrayInputStream(data));
-                assertEquals(dis.readInt(), x);
-            }
-        } catch (IOException e) {
-            assert(false);
-        }
-        long t3 = System.nanoTime();
-        long delta1 = t2 - t1;
-        long delta2 = t3 - t2;
-        System.out.println(String.format("time intFromIntoBytes=%d time DataInputStream=%d", delta1, delta2));
-        assert(delta2 * 10 > 12 * delta1);  // check we are 20% better
+        // Timing intFromBytes vs. DataInputStream is in benchmarks/ UtilsBenchmark (JMH) - not reliable in a unit test
     }
 
     @org.junit.Test
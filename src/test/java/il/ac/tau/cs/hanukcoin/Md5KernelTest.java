@@ -0,0 +1,59 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class Md5KernelTest extends TestCase {
+    private static byte[] javaMd5(byte[] data) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        md.update(data, 0, 24);
+        return md.digest();
+    }
+
+    @org.junit.Test
+    public void test_digestSameAsMessageDigest() throws Exception {
+        Random rand = new Random(1);
+        Md5Kernel md5 = new Md5Kernel();
+        byte[] sig = new byte[16];
+        for (int i = 0; i < 1000; i++) {
+            byte[] data = new byte[Block.BLOCK_SZ];
+            rand.nextBytes(data);
+            md5.digest(data);
+            md5.writeSignature(sig, 0, 16);
+            assertTrue(Arrays.equals(javaMd5(data), sig));
+            assertTrue(md5.signatureEquals(javaMd5(data), 0));
+        }
+    }
+
+    @org.junit.Test
+    public void test_checkPuzzleZeros() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block b = Block.createNoSig(1, HanukCoinUtils.walletCode("TEST"), Arrays.copyOfRange(genesis.getBytes(), 24, 32));
+        Md5Kernel md5 = new Md5Kernel();
+        md5.reset(b.getBytes());
+        for (long puzzle = -500; puzzle < 500; puzzle++) {
+            b.setLongPuzzle(puzzle);
+            byte[] sig = javaMd5(b.getBytes());
+            for (int nZeros = 0; nZeros <= 40; nZeros++) {
+                assertEquals(HanukCoinUtils.checkSignatureZeros(sig, nZeros), md5.checkPuzzle(puzzle, nZeros));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void test_checkSignature() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        assertEquals(genesis.checkSignature(), Block.BlockError.OK);
+        Block bad = genesis.clone();
+        bad.getBytes()[25] ^= 1;
+        assertEquals(bad.checkSignature(), Block.BlockError.SIG_BAD);
+        bad = genesis.clone();
+        bad.setLongPuzzle(1234);
+        assertEquals(bad.checkSignature(), Block.BlockError.SIG_NO_ZEROS);
+    }
+}
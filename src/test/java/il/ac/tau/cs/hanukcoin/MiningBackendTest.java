@@ -0,0 +1,53 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+
+public class MiningBackendTest extends TestCase {
+    @org.junit.Test
+    public void test_sameResultAsScalar() {
+        for (String name : MiningBackend.Holder.NAMES) {
+            MiningBackend backend = MiningBackend.newBackend(name);
+            if (backend == null) {
+                continue;  // not available on this JVM
+            }
+            MiningBackend scalar = new Md5Kernel();
+            Random rand = new Random(7);
+            byte[] data = new byte[Block.BLOCK_SZ];
+            for (int i = 0; i < 200; i++) {
+                rand.nextBytes(data);
+                backend.reset(data);
+                scalar.reset(data);
+                long start = rand.nextLong();
+                int count = 1 + rand.nextInt(5000);
+                int nZeros = 4 + rand.nextInt(12);  // low difficulty so we get hits
+                assertEquals(scalar.search(start, count, nZeros), backend.search(start, count, nZeros));
+            }
+        }
+    }
+
+    @org.junit.Test
+    public void test_acceptedByCheckSignature() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        byte[] prevSig = new byte[8];
+        System.arraycopy(genesis.getBytes(), 24, prevSig, 0, 8);
+        Block b = Block.createNoSig(1, HanukCoinUtils.walletCode("TEST"), prevSig);
+        MiningBackend backend = MiningBackend.create();
+        backend.reset(b.getBytes());
+        int nZeros = HanukCoinUtils.numberOfZerosForPuzzle(1);
+        long start = 0;
+        int found = -1;
+        while (found < 0) {
+            found = backend.search(start, 1 << 20, nZeros);
+            if (found < 0) {
+                start += 1 << 20;
+            }
+        }
+        b.setLongPuzzle(start + found);
+        b.setSignaturePart(b.calcSignature());
+        assertEquals(b.checkValidNext(genesis), Block.BlockError.OK);
+    }
+}
@@ -0,0 +1,72 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+
+public class MiningCheckpointTest extends TestCase {
+    private static Block template(int wallet) {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        byte[] prevSig = new byte[8];
+        System.arraycopy(genesis.getBytes(), 24, prevSig, 0, 8);
+        return Block.createNoSig(1, wallet, prevSig);
+    }
+
+    @org.junit.Test
+    public void test_disjointRanges() {
+        MiningCheckpoint cp = MiningCheckpoint.create(template(17), 4);
+        long stride = Long.divideUnsigned(-1L, 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(cp.nextPuzzle(i), i * stride);
+            assertEquals(cp.remaining(i), stride);
+        }
+        cp.advance(2, 100);
+        assertEquals(cp.nextPuzzle(2), 2 * stride + 100);
+        assertEquals(cp.totalProgress(), 100);
+    }
+
+    @org.junit.Test
+    public void test_saveLoad() throws Exception {
+        Path file = Files.createTempFile("hanukcoin", ".checkpoint");
+        try {
+            MiningCheckpoint cp = MiningCheckpoint.create(template(17), 3);
+            cp.advance(0, 5);
+            cp.advance(2, 1234567);
+            cp.save(file);
+            MiningCheckpoint loaded = MiningCheckpoint.load(file, template(17), 3);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(loaded.nextPuzzle(i), cp.nextPuzzle(i));
+            }
+            // another wallet or another split - start over
+            assertEquals(MiningCheckpoint.load(file, template(18), 3).totalProgress(), 0);
+            assertEquals(MiningCheckpoint.load(file, template(17), 4).totalProgress(), 0);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @org.junit.Test
+    public void test_minerResumes() throws Exception {
+        Path file = Files.createTempFile("hanukcoin", ".checkpoint");
+        Files.delete(file);
+        try {
+            Block genesis = HanukCoinUtils.createBlock0forTestStage();
+            int wallet = HanukCoinUtils.walletCode("TEST");
+            ParallelMiner miner = new ParallelMiner(2);
+            miner.setCheckpointFile(file);
+            Block b = miner.mine(wallet, genesis, 1000);
+            miner.shutdown();
+            if (b == null) {
+                // nothing found in 1000 attempts per thread - progress must be saved
+                Block template = Block.createNoSig(1, wallet, Arrays.copyOfRange(genesis.getBytes(), 24, 32));
+                assertEquals(MiningCheckpoint.load(file, template, 2).totalProgress(), 2000);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+
+public class MiningControllerTest extends TestCase {
+    @org.junit.Test
+    public void test_minesAndPausesOnOwnTip() throws Exception {
+        BlockChain chain = new BlockChain(HanukCoinUtils.createBlock0forTestStage());
+        int wallet = HanukCoinUtils.walletCode("TEST");
+        ParallelMiner miner = new ParallelMiner(2);
+        MiningController controller = new MiningController(chain, miner, wallet);
+        controller.start();
+        long deadline = System.currentTimeMillis() + 60000;
+        while (chain.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // our wallet holds the tip now - controller must not mine another block
+        Thread.sleep(200);
+        controller.stop();
+        miner.shutdown();
+        assertEquals(chain.size(), 2);
+        assertEquals(controller.getBlocksMined(), 1);
+        assertEquals(chain.getTip().getWalletNumber(), wallet);
+        assertEquals(chain.getTip().checkValidNext(chain.get(0)), Block.BlockError.OK);
+    }
+
+    @org.junit.Test
+    public void test_forkChoice() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        BlockChain chain = new BlockChain(genesis);
+        Block other = genesis.clone();
+        other.setLongPuzzle(0);
+        assertTrue(chain.isBetter(1, other));
+        assertFalse(chain.isBetter(1, genesis));
+        assertTrue(chain.isBetter(2, genesis));
+        assertFalse(chain.isBetter(0, genesis));
+    }
+
+    @org.junit.Test
+    public void test_tipVersion() {
+        java.util.List<Block> blocks = ParallelChainValidatorTest.linkedChain(4);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        long v0 = chain.getTipVersion();
+        chain.replace(blocks);
+        long v1 = chain.getTipVersion();
+        assertTrue(v1 != v0);
+        assertEquals(chain.getTipVersion(), v1);  // reads do not change it
+        chain.replace(blocks.subList(0, 3));
+        assertTrue(chain.getTipVersion() != v1);
+    }
+}
@@ -0,0 +1,55 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+
+public class MiningGovernorTest extends TestCase {
+    static final long MILLI = 1000000;
+
+    @org.junit.Test
+    public void test_backOffOverBudget() {
+        MiningGovernor governor = new MiningGovernor(10 * MILLI, 8);
+        // fast requests - governor grows slices and threads
+        for (int i = 0; i < 20; i++) {
+            governor.recordRequestLatency(MILLI);
+            governor.recordSlice(1000000, 2 * MILLI);
+        }
+        MiningGovernor.Decision grown = governor.getDecision();
+        assertEquals(grown.minerThreads(), 8);
+        assertEquals(grown.targetSliceNanos(), 10 * MILLI);  // never more than the budget
+        assertEquals(grown.attemptsPerSlice(), 5000000);
+        // requests over budget - back off
+        governor.recordRequestLatency(50 * MILLI);
+        governor.recordSlice(5000000, 10 * MILLI);
+        MiningGovernor.Decision shrunk = governor.getDecision();
+        assertEquals(shrunk.minerThreads(), 7);
+        assertEquals(shrunk.targetSliceNanos(), 5 * MILLI);
+        assertEquals(shrunk.attemptsPerSlice(), 2500000);
+    }
+
+    @org.junit.Test
+    public void test_percentile() {
+        MiningGovernor governor = new MiningGovernor(10 * MILLI, 1);
+        assertEquals(governor.latencyPercentile(99), 0);
+        for (int i = 1; i <= 100; i++) {
+            governor.recordRequestLatency(i);
+        }
+        assertEquals(governor.latencyPercentile(99), 99);
+        assertEquals(governor.latencyPercentile(50), 50);
+    }
+
+    @org.junit.Test
+    public void test_ringWraps() {
+        MiningGovernor governor = new MiningGovernor(10 * MILLI, 1);
+        for (int i = 0; i < 3 * MiningGovernor.LATENCY_SAMPLES + 7; i++) {
+            governor.recordRequestLatency(1000);
+        }
+        // last full ring is small - the old large samples are overwritten
+        for (int i = 1; i <= MiningGovernor.LATENCY_SAMPLES; i++) {
+            governor.recordRequestLatency(i);
+        }
+        assertEquals(governor.latencyPercentile(100), MiningGovernor.LATENCY_SAMPLES);
+        assertEquals(governor.latencyPercentile(50), MiningGovernor.LATENCY_SAMPLES / 2);
+    }
+}
@@ -0,0 +1,77 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+public class PackedChainStoreTest extends TestCase {
+    private static Block block(int serial, int wallet) {
+        Block b = Block.createNoSig(serial, wallet, new byte[8]);
+        b.setLongPuzzle(serial * 31L);
+        return b;
+    }
+
+    private void checkStore(boolean offHeap) throws Exception {
+        PackedChainStore store = new PackedChainStore(2, offHeap);  // small - force growing
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 1000; i++) {
+            Block b = block(i, i * 7);
+            store.append(b);
+            b.writeTo(new DataOutputStream(expected));
+        }
+        assertEquals(store.size(), 1000);
+        Block view = Block.createEmpty();
+        for (int i = 0; i < 1000; i++) {
+            assertSame(store.view(i, view), view);
+            assertTrue(view.equals(block(i, i * 7)));
+            assertEquals(store.getSerialNumber(i), i);
+            assertEquals(store.getWalletNumber(i), i * 7);
+            assertTrue(store.blockEquals(i, view));
+        }
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        store.writeTo(new DataOutputStream(written), 0, store.size());
+        assertTrue(Arrays.equals(written.toByteArray(), expected.toByteArray()));
+        ByteBuffer direct = ByteBuffer.allocateDirect(4 + store.size() * Block.BLOCK_SZ);
+        direct.putInt(1);
+        store.copyTo(direct, 0, store.size());
+        assertFalse(direct.hasRemaining());
+        byte[] copied = new byte[store.size() * Block.BLOCK_SZ];
+        direct.get(4, copied);
+        assertTrue(Arrays.equals(copied, expected.toByteArray()));
+
+        store.truncate(10);
+        assertEquals(store.size(), 10);
+        try {
+            store.view(10, view);
+            fail("expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    @org.junit.Test
+    public void test_onHeap() throws Exception {
+        checkStore(false);
+    }
+
+    @org.junit.Test
+    public void test_offHeap() throws Exception {
+        checkStore(true);
+    }
+
+    @org.junit.Test
+    public void test_validate() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        PackedChainStore store = new PackedChainStore();
+        store.append(genesis);
+        assertEquals(store.validate(0, store.size()), -1);
+        byte[] prevSig = Arrays.copyOfRange(genesis.getBytes(), 24, 32);
+        store.append(Block.createNoSig(1, 5, prevSig));  // not mined
+        assertEquals(store.validate(0, store.size()), 1);
+    }
+}
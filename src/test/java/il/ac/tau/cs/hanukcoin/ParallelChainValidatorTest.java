@@ -0,0 +1,66 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ParallelChainValidatorTest extends TestCase {
+    /**
+     * Linked chain whose signatures are set but without the required zeros - mining thousands of real blocks is too slow
+     */
+    static List<Block> linkedChain(int size) {
+        List<Block> chain = new ArrayList<>();
+        Block prev = HanukCoinUtils.createBlock0forTestStage();
+        chain.add(prev);
+        for (int i = 1; i < size; i++) {
+            byte[] prevSig = new byte[8];
+            System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+            Block b = Block.createNoSig(i, i % 3, prevSig);
+            b.setSignaturePart(b.calcSignature());
+            chain.add(b);
+            prev = b;
+        }
+        return chain;
+    }
+
+    static ParallelChainValidator.Result sequential(List<Block> blocks) {
+        for (int i = 1; i < blocks.size(); i++) {
+            Block.BlockError error = blocks.get(i).checkValidNext(blocks.get(i - 1));
+            if (error != Block.BlockError.OK) {
+                return new ParallelChainValidator.Result(i, error);
+            }
+        }
+        return ParallelChainValidator.Result.OK;
+    }
+
+    @org.junit.Test
+    public void test_sameAsSequential() {
+        ParallelChainValidator validator = new ParallelChainValidator();
+        List<Block> chain = linkedChain(2000);
+        assertEquals(validator.validate(chain), sequential(chain));  // SIG_NO_ZEROS at 1
+
+        // break linkage before the first signature failure would be seen in a later chunk
+        List<Block> broken = new ArrayList<>(chain);
+        Block b = chain.get(1).clone();
+        b.getBytes()[9] ^= 1;  // prevSig
+        broken.set(1, b);
+        assertEquals(validator.validate(broken), new ParallelChainValidator.Result(1, Block.BlockError.NO_PREV_SIG));
+        assertEquals(validator.validate(broken), sequential(broken));
+
+        Block sameWallet = Block.createNoSig(1, 0, new byte[8]);
+        broken.set(1, sameWallet);
+        assertEquals(validator.validate(broken), sequential(broken));
+    }
+
+    @org.junit.Test
+    public void test_validChain() {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block b1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        List<Block> chain = List.of(genesis, b1);
+        assertTrue(new ParallelChainValidator().validate(chain).isOk());
+        assertTrue(new ParallelChainValidator().validate(List.of(genesis)).isOk());
+    }
+}
@@ -0,0 +1,57 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class ParallelMinerTest extends TestCase {
+    @org.junit.Test
+    public void test_mineParallel() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        ParallelMiner miner = new ParallelMiner(4);
+        Block newBlock = null;
+        while (newBlock == null) {
+            newBlock = miner.mine(HanukCoinUtils.walletCode("TEST"), genesis, 10000000);
+        }
+        miner.shutdown();
+        assertEquals(newBlock.checkValidNext(genesis), Block.BlockError.OK);
+    }
+
+    @org.junit.Test
+    public void test_sameWalletPrev() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        ParallelMiner miner = new ParallelMiner(2);
+        assertNull(miner.mine(genesis.getWalletNumber(), genesis, 1000));
+        miner.shutdown();
+    }
+
+    @org.junit.Test
+    public void test_abort() throws Exception {
+        // serial 2^30 + 1 needs 51 zero bits - no block can be found, only abort() ends mine()
+        Block prev = Block.createNoSig(1 << 30, 1, new byte[8]);
+        ParallelMiner miner = new ParallelMiner(2);
+        AtomicReference<Block> result = new AtomicReference<>(prev);
+        Thread mining = new Thread(() -> {
+            try {
+                result.set(miner.mine(HanukCoinUtils.walletCode("TEST"), prev, Long.MAX_VALUE));
+            } catch (InterruptedException e) {
+                // leaves prev in result - fails below
+            }
+        });
+        mining.start();
+        Thread.sleep(50);
+        long t1 = System.nanoTime();
+        // abort() before the round started is lost (stopWhen covers that case) - so repeat it
+        while (mining.isAlive() && System.nanoTime() - t1 < 10_000_000_000L) {
+            miner.abort();
+            mining.join(10);
+        }
+        boolean stopped = !mining.isAlive();
+        miner.shutdown();
+        mining.join();
+        assertTrue(stopped);
+        assertNull(result.get());
+    }
+}
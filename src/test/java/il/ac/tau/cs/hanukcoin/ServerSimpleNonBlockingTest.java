@@ -0,0 +1,122 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ServerSimpleNonBlockingTest extends TestCase {
+    static String get(int port, boolean split) throws Exception {
+        try (Socket soc = new Socket("127.0.0.1", port)) {
+            OutputStream out = soc.getOutputStream();
+            if (split) {
+                // header in pieces - the reactor must wait for the rest
+                out.write("GET / HTTP/1.1\r".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(20);
+                out.write("\nHost: x\r\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(20);
+                out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+            } else {
+                out.write("GET / HTTP/1.1\r\nHost: x\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            InputStream in = soc.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            in.transferTo(response);  // server closes after the response
+            return response.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    static ServerSimpleNonBlocking start(Thread[] thread, int workers) throws Exception {
+        ServerSimpleNonBlocking.accepPort = 0;  // any free port
+        ServerSimpleNonBlocking server = new ServerSimpleNonBlocking(workers);
+        thread[0] = new Thread(() -> {
+            try {
+                server.runServer();
+            } catch (InterruptedException e) {
+                // stop
+            }
+        });
+        thread[0].start();
+        while (server.boundPort < 0) {
+            Thread.sleep(5);
+        }
+        return server;
+    }
+
+    @org.junit.Test
+    public void test_requestsAndCleanup() throws Exception {
+        Thread[] thread = new Thread[1];
+        ServerSimpleNonBlocking server = start(thread, 0);
+        try {
+            assertTrue(get(server.boundPort, false).contains("I am alive"));
+            assertTrue(get(server.boundPort, true).contains("I am alive"));
+
+            // many idle connections at once - each registered with the selector, none blocks the others
+            List<Socket> idle = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                idle.add(new Socket("127.0.0.1", server.boundPort));
+            }
+            assertTrue(get(server.boundPort, false).contains("I am alive"));
+            for (Socket s : idle) {
+                s.close();
+            }
+            // closed connections are dropped from the selector
+            for (int i = 0; i < 200 && server.getConnectionsCount() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(server.getConnectionsCount(), 0);
+        } finally {
+            server.stop();
+            thread[0].join();
+        }
+    }
+
+    @org.junit.Test
+    public void test_workers() throws Exception {
+        Thread[] thread = new Thread[1];
+        ServerSimpleNonBlocking server = start(thread, 3);
+        try {
+            List<Socket> idle = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                idle.add(new Socket("127.0.0.1", server.boundPort));
+            }
+            for (int i = 0; i < 200 && server.getConnectionsCount() < 30; i++) {
+                Thread.sleep(10);
+            }
+            List<ServerSimpleNonBlocking.ReactorStats> stats = server.getReactorStats();
+            assertEquals(stats.size(), 4);
+            assertEquals(stats.get(0).connections(), 0);  // boss only accepts
+            for (int w = 1; w <= 3; w++) {
+                assertEquals(stats.get(w).connections(), 10);  // spread evenly
+            }
+            for (int i = 0; i < 6; i++) {
+                assertTrue(get(server.boundPort, i % 2 == 0).contains("I am alive"));
+            }
+            for (Socket s : idle) {
+                s.close();
+            }
+            for (int i = 0; i < 200 && server.getConnectionsCount() > 0; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(server.getConnectionsCount(), 0);
+            long requests = 0;
+            for (ServerSimpleNonBlocking.ReactorStats s : server.getReactorStats()) {
+                requests += s.requests();
+            }
+            assertEquals(requests, 6);
+        } finally {
+            server.stop();
+            thread[0].join();
+        }
+    }
+}
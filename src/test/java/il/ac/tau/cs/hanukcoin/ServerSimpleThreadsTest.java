@@ -0,0 +1,100 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class ServerSimpleThreadsTest extends TestCase {
+    static Thread start(ServerSimpleThreads server) throws Exception {
+        ServerSimpleThreads.accepPort = 0;  // any free port
+        Thread thread = new Thread(() -> {
+            try {
+                server.runServer();
+            } catch (InterruptedException e) {
+                // stop
+            }
+        });
+        thread.start();
+        while (server.boundPort < 0) {
+            Thread.sleep(5);
+        }
+        return thread;
+    }
+
+    @org.junit.Test
+    public void test_virtualCapAndTimeout() throws Exception {
+        ServerSimpleThreads server = new ServerSimpleThreads(3, 300);
+        Thread thread = start(server);
+        try {
+            assertTrue(ServerSimpleNonBlockingTest.get(server.boundPort, true).contains("I am alive"));
+
+            // 3 silent peers take all the slots
+            List<Socket> idle = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                idle.add(new Socket("127.0.0.1", server.boundPort));
+            }
+            for (int i = 0; i < 100 && server.getActiveConnections() < 3; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(server.getActiveConnections(), 3);
+            // the read timeout closes them - then the next request is served
+            long t1 = System.nanoTime();
+            assertTrue(ServerSimpleNonBlockingTest.get(server.boundPort, false).contains("I am alive"));
+            assertTrue(System.nanoTime() - t1 > 200_000_000L);  // had to wait for a slot
+            for (Socket s : idle) {
+                InputStream in = s.getInputStream();
+                assertEquals(in.read(), -1);  // closed by the server
+                s.close();
+            }
+        } finally {
+            server.stop();
+            thread.join();
+        }
+    }
+
+    @org.junit.Test
+    public void test_headerDeadlineAndStopAtCap() throws Exception {
+        ServerSimpleThreads server = new ServerSimpleThreads(1, 300);
+        Thread thread = start(server);
+        try (Socket slow = new Socket("127.0.0.1", server.boundPort)) {
+            // a byte every 100ms - never trips the 300ms read timeout, only the header deadline
+            long t1 = System.nanoTime();
+            boolean closed = false;
+            for (int i = 0; i < 50 && !closed; i++) {
+                try {
+                    slow.getOutputStream().write('G');
+                    Thread.sleep(100);
+                } catch (IOException e) {
+                    closed = true;
+                }
+                closed |= server.getActiveConnections() == 0 && System.nanoTime() - t1 > 300_000_000L;
+            }
+            assertTrue(closed);
+            assertTrue(System.nanoTime() - t1 < 2_000_000_000L);
+        }
+        server.stop();
+        thread.join();
+
+        // at the cap with a silent peer that holds its slot for 10s - stop() must not wait for it
+        server = new ServerSimpleThreads(1, 10000);
+        thread = start(server);
+        try (Socket idle = new Socket("127.0.0.1", server.boundPort)) {
+            for (int i = 0; i < 100 && server.getActiveConnections() < 1; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(server.getActiveConnections(), 1);
+            server.stop();
+            thread.join(2000);
+            assertFalse(thread.isAlive());
+        } finally {
+            server.stop();
+            thread.join();
+        }
+    }
+}
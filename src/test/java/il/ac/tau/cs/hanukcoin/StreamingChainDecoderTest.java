@@ -0,0 +1,85 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class StreamingChainDecoderTest extends TestCase {
+    static final int TRAILER = 0x12345678;  // written after the message - checks the decoder read exactly one frame
+
+    static DataInputStream message(List<Block> blocks) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeInt(2);
+        dos.writeInt(ShowChain3.BEEF_BEEF);
+        dos.writeInt(1);
+        ShowChain3.NodeInfo n = new ShowChain3.NodeInfo();
+        n.name = "TEST";
+        n.host = "127.0.0.1";
+        n.port = 8080;
+        n.lastSeenTS = 1;
+        n.writeTo(dos);
+        dos.writeInt(ShowChain3.DEAD_DEAD);
+        dos.writeInt(blocks.size());
+        for (Block b : blocks) {
+            b.writeTo(dos);
+        }
+        dos.writeInt(TRAILER);
+        return new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    }
+
+    static StreamingChainDecoder.Decoded decode(StreamingChainDecoder decoder, List<Block> blocks) throws IOException {
+        DataInputStream dis = message(blocks);
+        StreamingChainDecoder.Decoded d = decoder.decode(dis);
+        assertEquals(dis.readInt(), TRAILER);
+        assertEquals(d.nodes.size(), 1);
+        assertEquals(d.nodes.get(0).name, "TEST");
+        return d;
+    }
+
+    @org.junit.Test
+    public void test_outcomes() throws Exception {
+        Block genesis = HanukCoinUtils.createBlock0forTestStage();
+        Block a1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_A);
+        Block b1 = ChainAdoptionTest.mineNext(genesis, ChainAdoptionTest.WALLET_B);
+        Block a2 = ChainAdoptionTest.mineNext(a1, ChainAdoptionTest.WALLET_B);
+        BlockChain chain = new BlockChain(genesis);
+        chain.append(a1);
+        StreamingChainDecoder decoder = new StreamingChainDecoder(chain);
+
+        assertEquals(decode(decoder, Arrays.asList(genesis)).outcome, StreamingChainDecoder.Outcome.LOSES);
+        assertEquals(decode(decoder, Arrays.asList(genesis, a1)).outcome, StreamingChainDecoder.Outcome.SAME);
+        // same length fork - the smaller last puzzle wins
+        StreamingChainDecoder.Decoded fork = decode(decoder, Arrays.asList(genesis, b1));
+        boolean b1Wins = b1.comparePuzzle(a1) < 0;
+        assertEquals(fork.outcome, b1Wins ? StreamingChainDecoder.Outcome.BETTER : StreamingChainDecoder.Outcome.LOSES);
+
+        Block badGenesis = genesis.clone();
+        badGenesis.getBytes()[20] ^= 1;
+        StreamingChainDecoder.Decoded other = decode(decoder, Arrays.asList(badGenesis, a1, a2));
+        assertEquals(other.outcome, StreamingChainDecoder.Outcome.INVALID);
+        assertEquals(other.badIndex, 0);
+
+        Block bad = a2.clone();
+        bad.getBytes()[30] ^= 1;
+        StreamingChainDecoder.Decoded invalid = decode(decoder, Arrays.asList(genesis, a1, bad, a2));
+        assertEquals(invalid.outcome, StreamingChainDecoder.Outcome.INVALID);
+        assertEquals(invalid.badIndex, 2);
+
+        StreamingChainDecoder.Decoded longer = decode(decoder, Arrays.asList(genesis, a1, a2));
+        assertEquals(longer.outcome, StreamingChainDecoder.Outcome.BETTER);
+        assertEquals(longer.forkPoint, 1);
+        assertEquals(longer.suffix.size(), 1);
+        assertTrue(decoder.adopt(longer));
+        assertEquals(chain.size(), 3);
+        assertTrue(chain.getTip().equals(a2));
+    }
+}
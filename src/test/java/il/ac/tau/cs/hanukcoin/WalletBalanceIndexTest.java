@@ -0,0 +1,98 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+
+public class WalletBalanceIndexTest extends TestCase {
+    /**
+     * Blocks linked by serial number and prev_sig - no valid signatures, BlockChain.replace() does not check
+     */
+    private static List<Block> chainOf(int... wallets) {
+        List<Block> blocks = new ArrayList<>();
+        Block prev = HanukCoinUtils.createBlock0forTestStage();
+        blocks.add(prev);
+        for (int i = 0; i < wallets.length; i++) {
+            byte[] prevSig = new byte[8];
+            System.arraycopy(prev.getBytes(), 24, prevSig, 0, 8);
+            Block b = Block.createNoSig(i + 1, wallets[i], prevSig);
+            b.setSignaturePart(b.calcSignature());
+            blocks.add(b);
+            prev = b;
+        }
+        return blocks;
+    }
+
+    @org.junit.Test
+    public void test_appendAndReorg() {
+        List<Block> blocks = chainOf(1, 2, 1, 3, 1, 2);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        int genesisWallet = blocks.get(0).getWalletNumber();
+        WalletBalanceIndex index = WalletBalanceIndex.attach(chain, 2);
+        assertEquals(index.getBalance(genesisWallet), 1);
+        chain.replace(blocks);
+        assertEquals(index.getBalance(1), 3);
+        assertEquals(index.getBalance(2), 2);
+        assertEquals(index.getBalance(3), 1);
+        assertEquals(index.top(), Arrays.asList(new WalletBalanceIndex.Entry(1, 3), new WalletBalanceIndex.Entry(2, 2)));
+
+        // reorg after block 2 - wallet 3 takes over
+        List<Block> fork = chainOf(1, 2, 3, 3, 3, 3, 2);
+        assertTrue(chain.replaceSuffix(2, blocks.get(2), fork.subList(3, fork.size())));
+        assertEquals(index.getBalance(1), 1);
+        assertEquals(index.getBalance(3), 4);
+        assertEquals(index.top(), Arrays.asList(new WalletBalanceIndex.Entry(3, 4), new WalletBalanceIndex.Entry(2, 2)));
+    }
+
+    @org.junit.Test
+    public void test_topMatchesScan() {
+        Random rand = new Random(7);
+        int[] wallets = new int[2000];
+        for (int i = 0; i < wallets.length; i++) {
+            wallets[i] = rand.nextInt(50) * 1000003;
+        }
+        List<Block> blocks = chainOf(wallets);
+        BlockChain chain = new BlockChain(blocks.get(0));
+        WalletBalanceIndex index = WalletBalanceIndex.attach(chain, 5);
+        chain.replace(blocks.subList(0, 1500));
+        chain.replaceSuffix(999, blocks.get(999), blocks.subList(1000, 2000));  // longer - adopted
+
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        for (Block b : blocks) {
+            expected.merge(b.getWalletNumber(), 1, Integer::sum);
+        }
+        assertEquals(index.getWalletsCount(), expected.size());
+        List<WalletBalanceIndex.Entry> sorted = new ArrayList<>();
+        expected.forEach((w, c) -> sorted.add(new WalletBalanceIndex.Entry(w, c)));
+        sorted.sort((a, b) -> a.coins() != b.coins() ? b.coins() - a.coins() : Integer.compare(a.wallet(), b.wallet()));
+        assertEquals(index.top(), sorted.subList(0, 5));
+    }
+
+    @org.junit.Test
+    public void test_intIntHashMap() {
+        IntIntHashMap map = new IntIntHashMap(2);  // small - force growing
+        HashMap<Integer, Integer> expected = new HashMap<>();
+        Random rand = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            int key = rand.nextInt(500) - 250;  // includes 0
+            if (rand.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.addTo(key, 1);
+                expected.merge(key, 1, Integer::sum);
+            }
+        }
+        assertEquals(map.size(), expected.size());
+        for (int key = -250; key < 250; key++) {
+            assertEquals(map.containsKey(key), expected.containsKey(key));
+            assertEquals(map.get(key, -1), (int) expected.getOrDefault(key, -1));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package il.ac.tau.cs.hanukcoin;
+
+
+import junit.framework.TestCase;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+
+public class WalletNamesTest extends TestCase {
+    @org.junit.Test
+    public void test_observeAndPersist() throws Exception {
+        Path file = Files.createTempFile("wallet", ".names");
+        Files.delete(file);
+        Path dict = Files.createTempFile("teams", ".txt");
+        Files.write(dict, Arrays.asList("Alpha", "  Beta  ", ""));
+
+        WalletNames names = new WalletNames(file);
+        ShowChain3.NodeInfo n = new ShowChain3.NodeInfo();
+        n.name = "Gamma";
+        names.observeNodes(Arrays.asList(n));
+        names.observe("bad\tname");
+        names.addDictionary(dict);
+        names.flush().get();
+        names.shutdown();
+        assertEquals(names.size(), 3);
+        assertEquals(names.nameOf(HanukCoinUtils.walletCode("Gamma")), "Gamma");
+        assertEquals(names.nameOf(HanukCoinUtils.walletCode("Beta")), "Beta");
+        assertNull(names.nameOf(HanukCoinUtils.walletCode("Delta")));
+        assertEquals(names.format(0x1234abcd), "0x1234abcd");
+
+        WalletNames loaded = new WalletNames(file);
+        assertEquals(loaded.size(), 3);
+        assertEquals(loaded.format(HanukCoinUtils.walletCode("Alpha")), "Alpha");
+        loaded.shutdown();
+        Files.delete(file);
+        Files.delete(dict);
+    }
+
+    @org.junit.Test
+    public void test_malformedFile() throws Exception {
+        Path file = Files.createTempFile("wallet", ".names");
+        Files.write(file, Arrays.asList("0000abcd\tGood", "xyz\tGarbage", "123456789abc\tTooLong", "no tab", "\tNoWallet"));
+        WalletNames names = new WalletNames(file);
+        assertEquals(names.size(), 1);
+        assertEquals(names.nameOf(0xabcd), "Good");
+        names.shutdown();
+        Files.delete(file);
+    }
+}